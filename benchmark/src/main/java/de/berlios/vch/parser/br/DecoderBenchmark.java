@@ -0,0 +1,90 @@
+package de.berlios.vch.parser.br;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the parse paths without network. Each benchmark decodes a fixture of real size: a letter with 1000
+ * series, a page of 25 episodes and a clip with 100 renditions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    private GraphResponseDecoder decoder;
+
+    private String seriesIndex;
+
+    private String seriesEpisodes;
+
+    private String clipDetails;
+
+    private String videoFiles;
+
+    private List<Rendition> renditions;
+
+    private RenditionProfile profile;
+
+    @Setup
+    public void setup() throws IOException {
+        decoder = new GraphResponseDecoder(BrMediathekParser.ID, NullLogService.create());
+        seriesIndex = Fixtures.load(Fixtures.SERIES_INDEX);
+        seriesEpisodes = Fixtures.load(Fixtures.SERIES_EPISODES);
+        clipDetails = Fixtures.load(Fixtures.CLIP_DETAILS);
+        videoFiles = Fixtures.videoFiles(Fixtures.RENDITION_COUNT);
+        renditions = decoder.parseRenditions(new JsonReader(new StringReader(videoFiles)));
+        profile = RenditionProfile.parse("mobile:maxHeight=360,maxBitrate=1200");
+    }
+
+    /** parseAlphabetPage without request and cache */
+    @Benchmark
+    public ResultPage parseAlphabetPage() throws IOException {
+        return decoder.decodeSeries(new StringReader(seriesIndex));
+    }
+
+    /** parseProgramPage without request and cache */
+    @Benchmark
+    public ResultPage parseProgramPage() throws IOException {
+        return decoder.decodeEpisodes(new StringReader(seriesEpisodes));
+    }
+
+    /** parseVideoPage without request and cache */
+    @Benchmark
+    public ClipDetails parseVideoPage() throws IOException {
+        return decoder.decodeClip(new StringReader(clipDetails));
+    }
+
+    @Benchmark
+    public List<Rendition> parseRenditions() throws IOException {
+        return decoder.parseRenditions(new JsonReader(new StringReader(videoFiles)));
+    }
+
+    /** selection of a cached clip for another profile */
+    @Benchmark
+    public Rendition selectRendition() {
+        return profile.select(renditions);
+    }
+
+    @Benchmark
+    public Calendar parsePubDate() {
+        return decoder.parsePubDate("2018-04-22T23:30:00.000Z");
+    }
+}
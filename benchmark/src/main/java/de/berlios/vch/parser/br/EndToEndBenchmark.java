@@ -0,0 +1,170 @@
+package de.berlios.vch.parser.br;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+import de.berlios.vch.parser.IWebPage;
+import de.berlios.vch.parser.OverviewPage;
+import de.berlios.vch.parser.VideoPage;
+
+/**
+ * End-to-end benchmarks of {@link BrMediathekParser#parse(IWebPage)} against the local
+ * {@link StubGraphServer}, so that response cache, single flight, the persisted query fallback and the metrics are
+ * measured together with request, transport and decoding. The sample time mode reports throughput and latency
+ * percentiles, run with <code>-prof gc</code> to get the allocation rates. Latency and failures of the endpoint are
+ * injected with the parameters <code>latency</code> (milliseconds) and <code>failureRate</code>. A
+ * <code>cacheTtl</code> of 0 sends each call to the endpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final String LETTER = "A";
+
+    private static final String SERIES_ID = "av:584f4ca83b467900117c3afb";
+
+    private static final String CLIP_ID = "av:5a96a98144ea9900178bd207";
+
+    @Param({ "0", "20" })
+    public long latency;
+
+    @Param({ "0", "0.05" })
+    public double failureRate;
+
+    @Param({ "0", "3600" })
+    public long cacheTtl;
+
+    @Param({ "true", "false" })
+    public boolean persistedQueries;
+
+    private StubGraphServer server;
+
+    private BrMediathekParser parser;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new StubGraphServer()
+                .respond(GraphQuery.SERIES_INDEX.getOperationName(), Fixtures.load(Fixtures.SERIES_INDEX))
+                .respond(GraphQuery.SERIES_EPISODES.getOperationName(), Fixtures.load(Fixtures.SERIES_EPISODES))
+                .respond(GraphQuery.CLIP_DETAILS.getOperationName(), Fixtures.load(Fixtures.CLIP_DETAILS))
+                .setLatency(latency, latency / 2)
+                .setFailureRate(failureRate);
+        server.start();
+        parser = createParser(server.getUri(), cacheTtl, persistedQueries);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parser.stop();
+        server.stop();
+    }
+
+    @Benchmark
+    public Object alphabetPage() {
+        OverviewPage page = new OverviewPage();
+        page.setUri(URI.create("br://letter/" + LETTER));
+        return parse(page);
+    }
+
+    @Benchmark
+    public Object programPage() {
+        OverviewPage page = new OverviewPage();
+        page.setUri(URI.create("br://program/" + SERIES_ID));
+        return parse(page);
+    }
+
+    @Benchmark
+    public Object videoPage() {
+        VideoPage page = new VideoPage();
+        page.setUri(URI.create("br://video/" + CLIP_ID));
+        return parse(page);
+    }
+
+    private Object parse(IWebPage page) {
+        try {
+            return parser.parse(page);
+        } catch (Exception e) {
+            // injected failure
+            return e;
+        }
+    }
+
+    /**
+     * Creates a started parser without the OSGi framework. The properties, which iPOJO would inject, are set with
+     * reflection. Index, episode feed and eager resolution are disabled, so that no background requests distort the
+     * measurement.
+     */
+    static BrMediathekParser createParser(String graphUri, long cacheTtl, boolean persistedQueries) throws Exception {
+        BrMediathekParser parser = new BrMediathekParser(createBundleContext());
+        set(parser, "logger", NullLogService.create());
+        set(parser, "metrics", new GraphMetrics());
+        set(parser, "feedListeners", new IEpisodeFeedListener[0]);
+        set(parser, "cacheSize", 500);
+        set(parser, "letterTtl", cacheTtl);
+        set(parser, "programTtl", cacheTtl);
+        set(parser, "clipTtl", cacheTtl);
+        set(parser, "seriesPageSize", 200);
+        set(parser, "episodesPageSize", 25);
+        set(parser, "graphUri", graphUri);
+        set(parser, "connectTimeout", 1000);
+        set(parser, "readTimeout", 5000);
+        set(parser, "persistedQueries", persistedQueries);
+        set(parser, "eagerEnabled", false);
+        set(parser, "indexEnabled", false);
+        set(parser, "feedEnabled", false);
+        set(parser, "feedBatchSize", 20);
+        set(parser, "feedPageSize", 10);
+        set(parser, "feedMaxPages", 5);
+        set(parser, "renditionProfilesConfig", "best");
+        set(parser, "defaultProfileName", "best");
+        parser.start();
+        return parser;
+    }
+
+    private static void set(BrMediathekParser parser, String name, Object value) throws Exception {
+        Field field = BrMediathekParser.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(parser, value);
+    }
+
+    /**
+     * @return a bundle context without file system support
+     */
+    private static BundleContext createBundleContext() {
+        return (BundleContext) Proxy.newProxyInstance(BundleContext.class.getClassLoader(),
+                new Class<?>[] { BundleContext.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("toString".equals(method.getName())) {
+                            return "BenchmarkBundleContext";
+                        }
+                        return null;
+                    }
+                });
+    }
+}
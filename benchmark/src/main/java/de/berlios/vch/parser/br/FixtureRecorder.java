@@ -0,0 +1,59 @@
+package de.berlios.vch.parser.br;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+
+/**
+ * Records responses of the GraphQL endpoint as fixtures for the benchmarks.
+ * <p>
+ * Usage: <code>FixtureRecorder &lt;directory&gt; [letter] [series id] [clip id]</code>
+ * </p>
+ */
+public class FixtureRecorder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: FixtureRecorder <directory> [letter] [series id] [clip id]");
+            System.exit(1);
+        }
+        File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create directory " + dir);
+        }
+        String letter = args.length > 1 ? args[1] : "S";
+        String seriesId = args.length > 2 ? args[2] : "av:584f4ca83b467900117c3afb";
+        String clipId = args.length > 3 ? args[3] : "av:5a96a98144ea9900178bd207";
+
+        GraphTransport transport = new GraphTransport(BrMediathekParser.GRAPH_URI, 10000, 30000);
+        record(transport, GraphQuery.SERIES_INDEX, GraphQuery.seriesIndexVariables("startsWith", letter, 1000, null),
+                new File(dir, Fixtures.SERIES_INDEX + ".json"));
+        record(transport, GraphQuery.SERIES_EPISODES, GraphQuery.seriesEpisodesVariables(seriesId, 100, null),
+                new File(dir, Fixtures.SERIES_EPISODES + ".json"));
+        record(transport, GraphQuery.CLIP_DETAILS, GraphQuery.clipDetailsVariables(clipId),
+                new File(dir, Fixtures.CLIP_DETAILS + ".json"));
+    }
+
+    private static void record(GraphTransport transport, GraphQuery query, String variables, File file) throws IOException {
+        Reader in = transport.post(query.createRequest(variables, false));
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                sb.append(buffer, 0, read);
+            }
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(Fixtures.bytes(sb.toString()));
+            } finally {
+                out.close();
+            }
+            System.out.println("Recorded " + query + " (" + sb.length() + " characters) to " + file);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package de.berlios.vch.parser.br;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * Responses of the GraphQL endpoint for the benchmarks. If the system property <code>fixtures.dir</code> points to a
+ * directory with responses recorded by {@link FixtureRecorder}, these are used. Otherwise responses of the same shape
+ * and size as the real ones are generated. The generated responses contain the fields of the web frontend queries
+ * (teaser images, crops, interactions, categories), so that the cost of skipping unused fields is measured, too.
+ */
+public class Fixtures {
+
+    public static final String SERIES_INDEX = "series-index";
+    public static final String SERIES_EPISODES = "series-episodes";
+    public static final String CLIP_DETAILS = "clip-details";
+
+    /** number of series of the generated letter page */
+    public static final int SERIES_COUNT = 1000;
+
+    /** number of episodes of the generated series page */
+    public static final int EPISODE_COUNT = 25;
+
+    /** number of renditions of the generated clip */
+    public static final int RENDITION_COUNT = 100;
+
+    private static final String[] WORDS = { "Abendschau", "Bergauf-Bergab", "Unser Land", "Quer", "Rundschau",
+            "Dahoam is Dahoam", "Zwischen Spessart und Karwendel", "Wir in Bayern", "Capriccio", "Gut zu wissen",
+            "Kunst + Krempel", "Frankenschau", "Schwaben & Altbayern", "Der Kom\u00f6dienstadel", "Space Night" };
+
+    public static String load(String name) throws IOException {
+        String dir = System.getProperty("fixtures.dir");
+        if (dir != null) {
+            File file = new File(dir, name + ".json");
+            if (file.exists()) {
+                return read(file);
+            }
+        }
+        if (SERIES_INDEX.equals(name)) {
+            return seriesIndex(SERIES_COUNT);
+        } else if (SERIES_EPISODES.equals(name)) {
+            return seriesEpisodes(EPISODE_COUNT);
+        } else if (CLIP_DETAILS.equals(name)) {
+            return clipDetails(RENDITION_COUNT);
+        }
+        throw new IllegalArgumentException("Unknown fixture " + name);
+    }
+
+    public static byte[] bytes(String fixture) {
+        try {
+            return fixture.getBytes(BrMediathekParser.CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String seriesIndex(int count) {
+        Random random = new Random(count);
+        StringBuilder sb = new StringBuilder("{\"data\":{\"viewer\":{\"seriesIndexAllSeries\":{");
+        sb.append("\"pageInfo\":{\"hasNextPage\":false,\"endCursor\":\"YXJyYXljb25uZWN0aW9uOjk5OQ==\"},");
+        sb.append("\"edges\":[");
+        for (int i = 0; i < count; i++) {
+            String id = id(random);
+            sb.append(i > 0 ? "," : "");
+            sb.append("{\"node\":{\"__typename\":\"Series\",\"id\":\"").append(id).append("\",");
+            sb.append("\"title\":\"").append(title(random, i)).append("\",");
+            sb.append("\"slug\":\"").append(id.substring(3)).append("\",\"subscribed\":false,");
+            teaserImages(sb, random);
+            sb.append("}}");
+        }
+        sb.append("]},\"id\":\"Viewer:__VIEWER\"}}}");
+        return sb.toString();
+    }
+
+    public static String seriesEpisodes(int count) {
+        Random random = new Random(count);
+        StringBuilder sb = new StringBuilder("{\"data\":{\"viewer\":{\"series\":{\"__typename\":\"Series\",");
+        sb.append("\"id\":\"av:584f4ca83b467900117c3afb\",\"title\":\"Abendschau\",");
+        teaserImages(sb, random);
+        sb.append(",\"categories\":{\"edges\":[");
+        for (int i = 0; i < 20; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"node\":{\"__typename\":\"Category\",\"id\":\"").append(id(random)).append("\"}}");
+        }
+        sb.append("]},\"previousEpisodes\":{\"count\":").append(count * 40).append(",");
+        sb.append("\"pageInfo\":{\"hasNextPage\":true,\"endCursor\":\"YXJyYXljb25uZWN0aW9uOjI0\"},\"edges\":[");
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? "," : "");
+            sb.append("{\"node\":{\"__typename\":\"Programme\",\"id\":\"").append(id(random)).append("\",");
+            sb.append("\"title\":\"").append(title(random, i)).append("\",\"kicker\":\"").append(title(random, i + 1)).append("\",");
+            sb.append("\"bookmarked\":false,\"duration\":").append(600 + random.nextInt(3000)).append(",");
+            sb.append("\"myInteractions\":{\"__typename\":\"Interactions\",\"progress\":0,\"completed\":false,\"id\":\"").append(id(random)).append("\"},");
+            sb.append("\"broadcasts\":{\"edges\":[{\"node\":{\"__typename\":\"BroadcastEvent\",\"start\":\"2018-04-")
+                    .append(10 + random.nextInt(18)).append("T1").append(random.nextInt(10)).append(":30:00.000Z\",\"id\":\"")
+                    .append(id(random)).append("\"}}]},");
+            teaserImages(sb, random);
+            sb.append("}}");
+        }
+        sb.append("]}}}}}");
+        return sb.toString();
+    }
+
+    public static String clipDetails(int renditions) {
+        Random random = new Random(renditions);
+        StringBuilder sb = new StringBuilder("{\"data\":{\"viewer\":{\"clip\":{\"__typename\":\"Programme\",");
+        sb.append("\"id\":\"av:5a96a98144ea9900178bd207\",\"title\":\"Abendschau\",");
+        sb.append("\"shortDescription\":\"Die Themen des Abends: ").append(title(random, 1)).append(", ")
+                .append(title(random, 2)).append(" und ").append(title(random, 3)).append("\",");
+        sb.append("\"reactions\":{\"likes\":12,\"dislikes\":1},");
+        sb.append("\"videoFiles\":").append(videoFiles(renditions));
+        sb.append("}}}}");
+        return sb.toString();
+    }
+
+    /**
+     * @return a videoFiles connection with the given number of renditions
+     */
+    public static String videoFiles(int renditions) {
+        Random random = new Random(renditions);
+        StringBuilder sb = new StringBuilder("{\"edges\":[");
+        int[][] profiles = { { 320, 180 }, { 480, 270 }, { 640, 360 }, { 960, 540 }, { 1280, 720 }, { 1920, 1080 } };
+        for (int i = 0; i < renditions; i++) {
+            int[] profile = profiles[random.nextInt(profiles.length)];
+            String id = id(random);
+            sb.append(i > 0 ? "," : "");
+            sb.append("{\"node\":{\"__typename\":\"VideoFile\",\"id\":\"").append(id).append("\",");
+            sb.append("\"mimetype\":\"video/mp4\",");
+            sb.append("\"publicLocation\":\"https://cdn-storage.br.de/MUJIuUOVBwQIbtC2uKJDM6OhuLnC_2rc9K1S/_-OS/").append(id.substring(3))
+                    .append("/").append(profile[1]).append(".mp4\",");
+            sb.append("\"subtitles\":{\"edges\":[]},");
+            sb.append("\"videoProfile\":{\"__typename\":\"VideoProfile\",\"id\":\"").append(id(random)).append("\",");
+            sb.append("\"width\":").append(profile[0]).append(",\"height\":").append(profile[1]).append("}");
+            sb.append("}}");
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private static void teaserImages(StringBuilder sb, Random random) {
+        sb.append("\"teaserImages\":{\"edges\":[{\"node\":{\"__typename\":\"Image\",\"shortDescription\":\"")
+                .append(title(random, 0)).append("\",\"copyright\":\"BR\",\"id\":\"").append(id(random)).append("\"}}]},");
+        sb.append("\"defaultTeaserImage\":{\"__typename\":\"Image\",\"shortDescription\":\"").append(title(random, 0))
+                .append("\",\"copyright\":\"BR\",\"imageFiles\":{\"edges\":[{\"node\":{\"__typename\":\"ImageFile\",\"id\":\"")
+                .append(id(random)).append("\",\"publicLocation\":\"https://img.br.de/").append(id(random).substring(3))
+                .append(".jpg\",\"crops\":{\"count\":4,\"edges\":[");
+        int[][] crops = { { 256, 144 }, { 640, 360 }, { 1280, 720 }, { 1920, 1080 } };
+        for (int i = 0; i < crops.length; i++) {
+            sb.append(i > 0 ? "," : "");
+            sb.append("{\"node\":{\"__typename\":\"ImageCrop\",\"publicLocation\":\"https://img.br.de/")
+                    .append(id(random).substring(3)).append(".jpg?w=").append(crops[i][0]).append("\",\"width\":")
+                    .append(crops[i][0]).append(",\"height\":").append(crops[i][1]).append(",\"id\":\"")
+                    .append(id(random)).append("\"}}");
+        }
+        sb.append("]}}}]},\"id\":\"").append(id(random)).append("\"}");
+    }
+
+    private static String id(Random random) {
+        StringBuilder sb = new StringBuilder("av:");
+        for (int i = 0; i < 24; i++) {
+            sb.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+
+    private static String title(Random random, int i) {
+        return WORDS[(i + random.nextInt(WORDS.length)) % WORDS.length] + " " + (i + 1);
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(BrMediathekParser.CHARSET);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package de.berlios.vch.parser.br;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.osgi.service.log.LogService;
+
+/**
+ * Creates a LogService, which discards all messages, so that logging doesn't distort the benchmarks. A proxy is used,
+ * because the methods of LogService differ between the OSGi releases.
+ */
+class NullLogService {
+
+    private NullLogService() {
+    }
+
+    static LogService create() {
+        return (LogService) Proxy.newProxyInstance(LogService.class.getClassLoader(), new Class<?>[] { LogService.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("toString".equals(method.getName())) {
+                            return "NullLogService";
+                        }
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,204 @@
+package de.berlios.vch.parser.br;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the GraphQL endpoint. It answers each operation with a fixture, compresses the responses, if the
+ * client accepts gzip, and can inject latency and failures. Failures are answered alternately with HTTP status 500 and
+ * with a GraphQL error response. Like the real endpoint, it supports automatic persisted queries: requests, which only
+ * contain an unknown query hash, are answered with <code>PersistedQueryNotFound</code>.
+ */
+public class StubGraphServer {
+
+    private static final Pattern OPERATION = Pattern.compile("\"operationName\"\\s*:\\s*\"(\\w+)\"");
+
+    private static final Pattern HASH = Pattern.compile("\"sha256Hash\"\\s*:\\s*\"(\\w+)\"");
+
+    private static final byte[] PERSISTED_QUERY_NOT_FOUND = Fixtures.bytes("{\"errors\":[{"
+            + "\"message\":\"PersistedQueryNotFound\",\"extensions\":{\"code\":\"PERSISTED_QUERY_NOT_FOUND\"}}]}");
+
+    private static final byte[] ERROR_RESPONSE = Fixtures.bytes("{\"errors\":[{\"message\":\"Injected failure\"}],\"data\":null}");
+
+    private final Map<String, byte[]> responses = new HashMap<String, byte[]>();
+
+    private final Map<String, byte[]> compressedResponses = new HashMap<String, byte[]>();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final Set<String> persistedQueries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final Random random = new Random();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private volatile long latency = 0;
+
+    private volatile long jitter = 0;
+
+    private volatile double failureRate = 0;
+
+    public StubGraphServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/graphql", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Sets the response of an operation, operations without a response are answered with the
+     * {@link GraphQuery#SERIES_INDEX} response
+     */
+    public StubGraphServer respond(String operationName, String response) throws IOException {
+        byte[] body = Fixtures.bytes(response);
+        responses.put(operationName, body);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(body);
+        gzip.close();
+        compressedResponses.put(operationName, out.toByteArray());
+        return this;
+    }
+
+    /**
+     * @param latency
+     *            minimum time in milliseconds before the response is sent
+     * @param jitter
+     *            maximum random time in milliseconds, which is added to the latency
+     */
+    public StubGraphServer setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * @param failureRate
+     *            share of the requests between 0 and 1, which fail
+     */
+    public StubGraphServer setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getUri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/graphql";
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        long count = requests.incrementAndGet();
+        String request = read(exchange.getRequestBody());
+        delay();
+
+        if (failureRate > 0 && nextDouble() < failureRate) {
+            if (count % 2 == 0) {
+                exchange.sendResponseHeaders(500, -1);
+            } else {
+                send(exchange, ERROR_RESPONSE);
+            }
+            return;
+        }
+
+        Matcher hash = HASH.matcher(request);
+        if (hash.find()) {
+            if (request.contains("\"query\"")) {
+                persistedQueries.add(hash.group(1));
+            } else if (!persistedQueries.contains(hash.group(1))) {
+                send(exchange, PERSISTED_QUERY_NOT_FOUND);
+                return;
+            }
+        }
+
+        String operation = GraphQuery.SERIES_INDEX.getOperationName();
+        Matcher m = OPERATION.matcher(request);
+        if (m.find() && responses.containsKey(m.group(1))) {
+            operation = m.group(1);
+        }
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            send(exchange, compressedResponses.get(operation));
+        } else {
+            send(exchange, responses.get(operation));
+        }
+    }
+
+    private void send(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private void delay() {
+        long time = latency + (jitter > 0 ? (long) (nextDouble() * jitter) : 0);
+        if (time > 0) {
+            try {
+                Thread.sleep(time);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString(BrMediathekParser.CHARSET);
+    }
+}
@@ -1,26 +1,46 @@
 package de.berlios.vch.parser.br;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.SimpleDateFormat;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Invalidate;
+import org.apache.felix.ipojo.annotations.Property;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.apache.felix.ipojo.annotations.Validate;
+import org.osgi.framework.BundleContext;
 import org.osgi.service.log.LogService;
 
-import de.berlios.vch.http.client.HttpUtils;
 import de.berlios.vch.parser.IOverviewPage;
 import de.berlios.vch.parser.IVideoPage;
 import de.berlios.vch.parser.IWebPage;
@@ -30,7 +50,7 @@ import de.berlios.vch.parser.VideoPage;
 
 @Component
 @Provides
-public class BrMediathekParser implements IWebParser {
+public class BrMediathekParser implements IWebParser, IBrMediathekParser {
 
     public static final String ID = BrMediathekParser.class.getName();
 
@@ -39,6 +59,12 @@ public class BrMediathekParser implements IWebParser {
     public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
     public static final String CHARSET = "UTF-8";
 
+    /** error message of the endpoint, if it doesn't know the hash of a persisted query */
+    private static final String PERSISTED_QUERY_NOT_FOUND = "PersistedQueryNotFound";
+
+    /** error message of the endpoint, if it doesn't support persisted queries at all */
+    private static final String PERSISTED_QUERY_NOT_SUPPORTED = "PersistedQueryNotSupported";
+
     private static final SortedMap<String, String[]> aBiszParams = new TreeMap<String, String[]>();
     static {
         aBiszParams.put("A", new String[] {"startsWith", "A"});
@@ -73,6 +99,392 @@ public class BrMediathekParser implements IWebParser {
     @Requires
     private LogService logger;
 
+    @Requires
+    private IGraphMetrics metrics;
+
+    @Requires(optional = true)
+    private IEpisodeFeedListener[] feedListeners;
+
+    /** Maximum number of entries in each of the response caches */
+    @Property(name = "cache.size", value = "500")
+    private int cacheSize;
+
+    /** Time to live in seconds of the cached A-Z lists, which change rarely */
+    @Property(name = "cache.ttl.letter", value = "86400")
+    private long letterTtl;
+
+    /** Time to live in seconds of the cached episode lists, which change about hourly */
+    @Property(name = "cache.ttl.program", value = "3600")
+    private long programTtl;
+
+    /** Time to live in seconds of the cached clip details, the stream URIs change almost never */
+    @Property(name = "cache.ttl.clip", value = "604800")
+    private long clipTtl;
+
+    /** Number of series, which are loaded per page of the A-Z list */
+    @Property(name = "page.size.series", value = "200")
+    private int seriesPageSize;
+
+    /** Number of episodes, which are loaded per page of a series */
+    @Property(name = "page.size.episodes", value = "25")
+    private int episodesPageSize;
+
+    /** URI of the GraphQL endpoint */
+    @Property(name = "graph.uri", value = GRAPH_URI)
+    private String graphUri;
+
+    /** Connect timeout in milliseconds */
+    @Property(name = "http.connectTimeout", value = "10000")
+    private int connectTimeout;
+
+    /** Read timeout in milliseconds */
+    @Property(name = "http.readTimeout", value = "30000")
+    private int readTimeout;
+
+    private GraphTransport transport;
+
+    private static final String PAGE_CACHE = "pages";
+
+    private static final String CLIP_CACHE = "clips";
+
+    private ResponseCache<ResultPage> pageCache;
+
+    private ResponseCache<ClipDetails> clipCache;
+
+    private GraphResponseDecoder decoder;
+
+    /** Send automatic persisted query hashes instead of the query text */
+    @Property(name = "graphql.persistedQueries", value = "true")
+    private boolean persistedQueries;
+
+    private volatile boolean persistedQueriesSupported = true;
+
+    /** Resolve description and video URI of all episodes, when a series is opened */
+    @Property(name = "eager.enabled", value = "false")
+    private boolean eagerEnabled;
+
+    /** Number of clips, which are resolved with one GraphQL request */
+    @Property(name = "eager.batchSize", value = "10")
+    private int eagerBatchSize;
+
+    /** Number of batch requests, which are executed concurrently */
+    @Property(name = "eager.concurrency", value = "4")
+    private int eagerConcurrency;
+
+    /** Time in seconds to wait for the resolution of the episodes of a series */
+    @Property(name = "eager.timeout", value = "10")
+    private int eagerTimeout;
+
+    private ExecutorService clipResolver;
+
+    /**
+     * Keep a local index of all series and episodes, which answers the A-Z lists. The index is updated the first time
+     * it is used and then regularly.
+     */
+    @Property(name = "index.enabled", value = "true")
+    private boolean indexEnabled;
+
+    /** Crawl the episodes of all series into the index, too */
+    @Property(name = "index.episodes", value = "false")
+    private boolean indexEpisodes;
+
+    /** Number of series, whose episodes are crawled with one GraphQL request */
+    @Property(name = "index.batchSize", value = "20")
+    private int indexBatchSize;
+
+    /** Maximum number of pages, which are loaded per series to find the last indexed episode */
+    @Property(name = "index.maxPages", value = "5")
+    private int indexMaxPages;
+
+    /** Interval in hours, in which the index is updated */
+    @Property(name = "index.refresh", value = "24")
+    private int indexRefresh;
+
+    /** Time in milliseconds between two requests of the indexer */
+    @Property(name = "index.delay", value = "500")
+    private long indexDelay;
+
+    /** Poll the subscribed series of the episode feed for new episodes */
+    @Property(name = "feed.enabled", value = "true")
+    private boolean feedEnabled;
+
+    /** Interval in minutes, in which the subscribed series are polled */
+    @Property(name = "feed.interval", value = "30")
+    private int feedInterval;
+
+    /** Number of series, which are polled with one GraphQL request */
+    @Property(name = "feed.batchSize", value = "20")
+    private int feedBatchSize;
+
+    /** Number of episodes, which are requested per series and poll */
+    @Property(name = "feed.pageSize", value = "10")
+    private int feedPageSize;
+
+    /** Maximum number of pages, which are loaded per series to find the last known episode */
+    @Property(name = "feed.maxPages", value = "5")
+    private int feedMaxPages;
+
+    private EpisodeFeed episodeFeed;
+
+    /**
+     * Rendition profiles of the clients, separated by semicolons. Each profile consists of a name and optional
+     * constraints maxHeight, maxWidth, maxBitrate (kbit/s) and mimetype, e.g.
+     * <code>mobile:maxHeight=360,maxBitrate=1200</code>. Clients select a profile with the parameter
+     * <code>profile</code> of the video page URI.
+     */
+    @Property(name = "rendition.profiles", value = "mobile:maxHeight=360,maxBitrate=1200;sd:maxHeight=576;hd:maxHeight=720;best")
+    private String renditionProfilesConfig;
+
+    /** Rendition profile, which is used, if a client doesn't select one */
+    @Property(name = "rendition.profile", value = "best")
+    private String defaultProfileName;
+
+    private final Map<String, RenditionProfile> renditionProfiles = new ConcurrentHashMap<String, RenditionProfile>();
+
+    private RenditionProfile defaultProfile = RenditionProfile.BEST;
+
+    private ScheduledExecutorService feedPoller;
+
+    private final BundleContext ctx;
+
+    private CatalogIndex catalogIndex;
+
+    private ScheduledExecutorService indexer;
+
+    private File indexFile;
+
+    private final AtomicBoolean indexScheduled = new AtomicBoolean();
+
+    public BrMediathekParser(BundleContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Validate
+    public void start() throws IOException {
+        transport = new GraphTransport(graphUri, connectTimeout, readTimeout);
+        decoder = new GraphResponseDecoder(ID, logger);
+        pageCache = new ResponseCache<ResultPage>(cacheSize);
+        clipCache = new ResponseCache<ClipDetails>(cacheSize);
+        metrics.addCache(PAGE_CACHE, pageCache);
+        metrics.addCache(CLIP_CACHE, clipCache);
+        if (eagerEnabled) {
+            clipResolver = Executors.newFixedThreadPool(Math.max(1, eagerConcurrency), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "BR Mediathek clip resolver " + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        if (indexEnabled) {
+            startIndexer();
+        }
+        startEpisodeFeed();
+        configureRenditionProfiles();
+    }
+
+    private void configureRenditionProfiles() {
+        renditionProfiles.clear();
+        renditionProfiles.put(RenditionProfile.BEST.getName(), RenditionProfile.BEST);
+        if (renditionProfilesConfig != null) {
+            for (String config : renditionProfilesConfig.split(";")) {
+                if (config.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    RenditionProfile profile = RenditionProfile.parse(config);
+                    renditionProfiles.put(profile.getName(), profile);
+                } catch (IllegalArgumentException e) {
+                    logger.log(LogService.LOG_WARNING, "Ignoring rendition profile: " + e.getMessage());
+                }
+            }
+        }
+        defaultProfile = renditionProfiles.get(defaultProfileName);
+        if (defaultProfile == null) {
+            logger.log(LogService.LOG_WARNING, "Unknown rendition profile " + defaultProfileName + ", using "
+                    + RenditionProfile.BEST.getName());
+            defaultProfile = RenditionProfile.BEST;
+        }
+    }
+
+    /**
+     * @return the names of the configured rendition profiles
+     */
+    @Override
+    public Set<String> getRenditionProfiles() {
+        return new TreeSet<String>(renditionProfiles.keySet());
+    }
+
+    /**
+     * Returns all renditions of a clip, greatest height first. The renditions are cached with the clip details, so
+     * that selecting a rendition for another profile doesn't need another GraphQL request.
+     */
+    @Override
+    public List<Rendition> getRenditions(String clipId) throws IOException {
+        return loadClip(clipId).getRenditions();
+    }
+
+    /**
+     * Selects the rendition of a clip for the given profile
+     *
+     * @param profile
+     *            the name of the profile or <code>null</code> for the default profile
+     * @return the selected rendition or <code>null</code>, if the clip has no video files
+     * @throws IllegalArgumentException
+     *             if the profile is unknown
+     */
+    @Override
+    public Rendition selectRendition(String clipId, String profile) throws IOException {
+        return getProfile(profile).select(getRenditions(clipId));
+    }
+
+    private RenditionProfile getProfile(String name) {
+        if (name == null) {
+            return defaultProfile;
+        }
+        RenditionProfile profile = renditionProfiles.get(name);
+        if (profile == null) {
+            throw new IllegalArgumentException("Unknown rendition profile " + name);
+        }
+        return profile;
+    }
+
+    private URI selectVideoUri(ClipDetails clip, RenditionProfile profile) {
+        Rendition rendition = profile.select(clip.getRenditions());
+        return rendition != null ? rendition.getUri() : null;
+    }
+
+    private void startIndexer() {
+        File file = ctx.getDataFile("catalog.idx");
+        if (file == null) {
+            logger.log(LogService.LOG_WARNING, "No file system support, catalog index is disabled");
+            return;
+        }
+        CatalogIndex index = new CatalogIndex();
+        if (file.exists()) {
+            try {
+                index.load(file);
+            } catch (IOException e) {
+                logger.log(LogService.LOG_WARNING, "Couldn't load catalog index, creating a new one", e);
+                index = new CatalogIndex();
+            }
+        }
+        catalogIndex = index;
+        indexFile = file;
+
+        indexer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BR Mediathek catalog indexer");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Schedules the updates of the index, when it is used for the first time. An index, which is older than the
+     * refresh interval, is updated immediately.
+     */
+    private void scheduleIndexer() {
+        ScheduledExecutorService executor = indexer;
+        CatalogIndex index = catalogIndex;
+        if (executor == null || index == null || !indexScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long interval = TimeUnit.HOURS.toMillis(Math.max(1, indexRefresh));
+        long initialDelay = Math.max(0, index.getUpdated() + interval - System.currentTimeMillis());
+        CatalogIndexer crawler = new CatalogIndexer(this, index, indexFile, logger, indexDelay, indexEpisodes,
+                Math.max(1, indexBatchSize), Math.max(1, episodesPageSize), Math.max(1, indexMaxPages));
+        executor.scheduleWithFixedDelay(crawler, initialDelay, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void startEpisodeFeed() {
+        File file = ctx.getDataFile("episode-feed.properties");
+        episodeFeed = new EpisodeFeed(this, file, logger, Math.max(1, feedBatchSize), Math.max(1, feedPageSize),
+                Math.max(1, feedMaxPages));
+        if (file != null && file.exists()) {
+            try {
+                episodeFeed.load();
+            } catch (IOException e) {
+                logger.log(LogService.LOG_WARNING, "Couldn't load the watermarks of the episode feed", e);
+            }
+        }
+        if (feedEnabled) {
+            feedPoller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "BR Mediathek episode feed");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            long interval = Math.max(1, feedInterval);
+            feedPoller.scheduleWithFixedDelay(episodeFeed, interval, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * @return the feed of new episodes of the subscribed series
+     */
+    @Override
+    public EpisodeFeed getEpisodeFeed() {
+        return episodeFeed;
+    }
+
+    /**
+     * Notifies all {@link IEpisodeFeedListener}s about new episodes of a series
+     */
+    void fireNewEpisodes(String seriesId, List<IVideoPage> episodes) {
+        for (IEpisodeFeedListener listener : feedListeners) {
+            try {
+                listener.newEpisodes(seriesId, episodes);
+            } catch (RuntimeException e) {
+                logger.log(LogService.LOG_WARNING, "Episode feed listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return the local index of all series and episodes or <code>null</code>, if the index is disabled
+     */
+    @Override
+    public CatalogIndex getCatalogIndex() {
+        scheduleIndexer();
+        return catalogIndex;
+    }
+
+    @Invalidate
+    public void stop() {
+        if (feedPoller != null) {
+            feedPoller.shutdownNow();
+            feedPoller = null;
+        }
+        if (episodeFeed != null) {
+            episodeFeed.save();
+            episodeFeed = null;
+        }
+        if (indexer != null) {
+            indexer.shutdownNow();
+            indexer = null;
+        }
+        indexScheduled.set(false);
+        catalogIndex = null;
+        if (clipResolver != null) {
+            clipResolver.shutdownNow();
+            clipResolver = null;
+        }
+        logger.log(LogService.LOG_DEBUG, "Page cache: " + pageCache + ", clip cache: " + clipCache);
+        metrics.removeCache(PAGE_CACHE);
+        metrics.removeCache(CLIP_CACHE);
+        pageCache.clear();
+        clipCache.clear();
+    }
+
     @Override
     public String getId() {
         return ID;
@@ -98,6 +510,10 @@ public class BrMediathekParser implements IWebParser {
         return root;
     }
 
+    Set<String> getLetters() {
+        return aBiszParams.keySet();
+    }
+
     private OverviewPage createRootPage() throws URISyntaxException {
         OverviewPage page = new OverviewPage();
         page.setParser(ID);
@@ -109,12 +525,13 @@ public class BrMediathekParser implements IWebParser {
     @Override
     public IWebPage parse(IWebPage page) throws Exception {
         if (page instanceof IOverviewPage) {
+            String after = getCursor(page.getUri());
             if(page.getUri().getHost().equals("letter")) {
                 String letter = page.getUri().getPath().substring(1);
-                parseAlphabetPage((IOverviewPage) page, letter);
+                parseAlphabetPage((IOverviewPage) page, letter, after);
             } else if(page.getUri().getHost().equals("program")) {
                 IOverviewPage opage = (IOverviewPage) page;
-                parseProgramPage(opage);
+                parseProgramPage(opage, after);
             }
         } else {
             IVideoPage video = parseVideoPage(page);
@@ -123,173 +540,406 @@ public class BrMediathekParser implements IWebParser {
         return page;
     }
 
-    private void parseAlphabetPage(IOverviewPage page, String letter) throws Exception {
-        JSONObject request = new JSONObject(aBiszRequest);
-        JSONObject variables = request.getJSONObject("variables");
-        JSONObject seriesFilter = variables.getJSONObject("seriesFilter");
-        JSONObject title = seriesFilter.getJSONObject("title");
-        title.remove("startsWith");
+    private void parseAlphabetPage(IOverviewPage page, final String letter, final String after) throws Exception {
+        scheduleIndexer();
+        CatalogIndex index = catalogIndex;
+        if (after == null && index != null && index.hasLetter(letter)) {
+            for (CatalogIndex.Series series : index.getSeries(letter)) {
+                OverviewPage progPage = new OverviewPage();
+                progPage.setParser(ID);
+                progPage.setTitle(series.getTitle());
+                progPage.setUri(new URI("br://program/" + series.getId()));
+                page.getPages().add(progPage);
+            }
+            return;
+        }
+
+        String key = ResponseCache.key(GraphQuery.SERIES_INDEX.getOperationName(), letter, after);
+        ResultPage programs = pageCache.get(key, new Callable<ResultPage>() {
+            @Override
+            public ResultPage call() throws Exception {
+                return fetchAlphabetPage(letter, after);
+            }
+        }, letterTtl * 1000L);
+        addCopies(page, programs.getPages());
+        if (programs.hasNextPage()) {
+            page.getPages().add(createNextPage("letter", letter, programs.getEndCursor()));
+        }
+    }
+
+    ResultPage fetchAlphabetPage(String letter, String after) throws IOException {
         String[] query = aBiszParams.get(letter);
         String predicate = query[0];
         String value = query[1];
-        title.put(predicate, value);
-
-        Map<String, String> header = HttpUtils.createFirefoxHeader();
-        header.put("Referer", "https://www.br.de/mediathek/sendungen_a-z");
-        header.put("origin", "https://www.br.de");
-        header.put("DNT", "1");
-        header.put("content-type", "application/json");
-        String response = HttpUtils.post(GRAPH_URI, header, request.toString().getBytes("utf-8"), "UTF-8");
-        JSONObject resp = new JSONObject(response);
-        JSONObject data = resp.getJSONObject("data");
-        JSONObject viewer = data.getJSONObject("viewer");
-        JSONObject seriesIndexAllSeries = viewer.getJSONObject("seriesIndexAllSeries");
-        JSONArray edges = seriesIndexAllSeries.getJSONArray("edges");
-        for (int i = 0; i < edges.length(); i++) {
-            JSONObject edge = edges.getJSONObject(i);
-            JSONObject node = edge.getJSONObject("node");
-            String programTitle = node.getString("title");
-            String id = node.getString("id");
-
-            OverviewPage progPage = new OverviewPage();
-            progPage.setParser(getId());
-            progPage.setTitle(programTitle);
-            progPage.setUri(new URI("br://program/" + id));
-            page.getPages().add(progPage);
-        }
-    }
-
-    private void parseProgramPage(IOverviewPage page) throws Exception {
-        String id = page.getUri().getPath().substring(1);
-        JSONObject request = new JSONObject(programOverviewRequest);
-        JSONObject variables = request.getJSONObject("variables");
-        variables.put("id", id);
-
-        Map<String, String> header = HttpUtils.createFirefoxHeader();
-        header.put("Referer", "https://www.br.de/mediathek/sendungen_a-z");
-        header.put("origin", "https://www.br.de");
-        header.put("DNT", "1");
-        header.put("content-type", "application/json");
-        String response = HttpUtils.post(GRAPH_URI, header, request.toString().getBytes("utf-8"), "UTF-8");
-        JSONObject resp = new JSONObject(response);
-        JSONObject data = resp.getJSONObject("data");
-        JSONObject viewer = data.getJSONObject("viewer");
-        JSONObject series = viewer.getJSONObject("series");
-        JSONObject previousEpisodes = series.getJSONObject("previousEpisodes");
-        JSONArray edges = previousEpisodes.getJSONArray("edges");
-        for (int i = 0; i < edges.length(); i++) {
-            JSONObject edge = edges.getJSONObject(i);
-            JSONObject node = edge.getJSONObject("node");
-            VideoPage video = new VideoPage();
-            video.setParser(getId());
-            video.setTitle(node.getString("title"));
-            video.setDuration(node.getLong("duration"));
-            video.setPublishDate(parsePubDate(node));
-            video.setThumbnail(parseThumbnail(node));
-            video.setUri(new URI("br://video/" + node.getString("id")));
-            video.setVideoUri(new URI("https://www.hampelratte.org"));
-            page.getPages().add(video);
+        String variables = GraphQuery.seriesIndexVariables(predicate, value, seriesPageSize, after);
+        return execute(GraphQuery.SERIES_INDEX, variables, new ResponseHandler<ResultPage>() {
+            @Override
+            public ResultPage handle(Reader response) throws IOException {
+                return decoder.decodeSeries(response);
+            }
+        });
+    }
+
+    private void parseProgramPage(IOverviewPage page, final String after) throws Exception {
+        final String id = page.getUri().getPath().substring(1);
+        String key = ResponseCache.key(GraphQuery.SERIES_EPISODES.getOperationName(), id, after);
+        ResultPage episodes = pageCache.get(key, new Callable<ResultPage>() {
+            @Override
+            public ResultPage call() throws Exception {
+                return fetchProgramPage(id, after);
+            }
+        }, programTtl * 1000L);
+        addCopies(page, episodes.getPages());
+        if (eagerEnabled) {
+            resolveClips(page.getPages());
+        }
+        if (episodes.hasNextPage()) {
+            page.getPages().add(createNextPage("program", id, episodes.getEndCursor()));
         }
     }
 
-    private URI parseThumbnail(JSONObject node) {
-        try {
-            JSONObject defaultTeaserImage = node.getJSONObject("defaultTeaserImage");
-            JSONObject imageFiles = defaultTeaserImage.getJSONObject("imageFiles");
-            JSONArray edges = imageFiles.getJSONArray("edges");
-            JSONObject n = edges.getJSONObject(0).getJSONObject("node");
-            return new URI(n.getString("publicLocation"));
-        } catch (Exception e) {
-            logger.log(LogService.LOG_WARNING, "Couldn't parse thumbnail", e);
-            return null;
+    ResultPage fetchProgramPage(String id, String after) throws IOException {
+        return fetchProgramPage(id, episodesPageSize, after);
+    }
+
+    ResultPage fetchProgramPage(String id, int first, String after) throws IOException {
+        String variables = GraphQuery.seriesEpisodesVariables(id, first, after);
+        return execute(GraphQuery.SERIES_EPISODES, variables, new ResponseHandler<ResultPage>() {
+            @Override
+            public ResultPage handle(Reader response) throws IOException {
+                return decoder.decodeEpisodes(response);
+            }
+        });
+    }
+
+    /**
+     * Loads the first <code>first</code> episodes of several series with one request
+     *
+     * @return map of the series ids to their episodes. Series, which couldn't be resolved, are missing.
+     */
+    Map<String, ResultPage> fetchProgramPages(List<String> ids, int first) throws IOException {
+        String variables = GraphQuery.seriesEpisodesBatchVariables(ids, first);
+        Map<String, ResultPage> aliases = execute(GraphQuery.seriesEpisodesBatch(ids.size()), variables,
+                new ResponseHandler<Map<String, ResultPage>>() {
+                    @Override
+                    public Map<String, ResultPage> handle(Reader response) throws IOException {
+                        return decoder.decodeEpisodeBatch(response);
+                    }
+                });
+        Map<String, ResultPage> pages = new HashMap<String, ResultPage>();
+        for (int i = 0; i < ids.size(); i++) {
+            ResultPage page = aliases.get("s" + i);
+            if (page != null) {
+                pages.put(ids.get(i), page);
+            }
         }
+        return pages;
     }
 
-    private Calendar parsePubDate(JSONObject node) {
-        Calendar pubDate = Calendar.getInstance();
+    /**
+     * Creates the page, which loads the next page of a paginated list, when it is opened. The cursor of the next page is
+     * passed URL encoded in the query of the URI, e.g.
+     * <code>br://program/av:584f4ca83b467900117c3afb?after=YXJyYXljb25uZWN0aW9uOjI0</code>
+     */
+    private OverviewPage createNextPage(String type, String id, String endCursor) throws URISyntaxException {
+        OverviewPage next = new OverviewPage();
+        next.setParser(ID);
+        next.setTitle("Mehr...");
+        URI uri = new URI("br", null, type, -1, "/" + id, null, null);
         try {
-            // 2018-04-22T23:30:00.000Z
-            JSONObject broadcasts = node.getJSONObject("broadcasts");
-            JSONArray edges = broadcasts.getJSONArray("edges");
-            JSONObject n = edges.getJSONObject(0).getJSONObject("node");
-            String start = n.getString("start");
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-            Date broadcastDate = sdf.parse(start);
-            pubDate.setTimeInMillis(broadcastDate.getTime());
-        } catch (Exception e) {
-            logger.log(LogService.LOG_WARNING, "Couldn't parse publish date", e);
-            pubDate.setTimeInMillis(0);
-        }
-        return pubDate;
-    }
-
-    private IVideoPage parseVideoPage(IWebPage page) throws JSONException, UnsupportedEncodingException, IOException, URISyntaxException {
-        IVideoPage video = (IVideoPage) page;
-        String id = page.getUri().getPath().substring(1);
-        JSONObject request = new JSONObject(videoRequest);
-        JSONObject variables = request.getJSONObject("variables");
-        variables.put("clipId", id);
-
-        Map<String, String> header = HttpUtils.createFirefoxHeader();
-        header.put("Referer", "https://www.br.de/mediathek/sendungen_a-z");
-        header.put("origin", "https://www.br.de");
-        header.put("DNT", "1");
-        header.put("content-type", "application/json");
-        String response = HttpUtils.post(GRAPH_URI, header, request.toString().getBytes("utf-8"), "UTF-8");
-        JSONObject resp = new JSONObject(response);
-        JSONObject data = resp.getJSONObject("data");
-        JSONObject viewer = data.getJSONObject("viewer");
-        JSONObject detailClip = viewer.getJSONObject("detailClip");
-        String description = detailClip.getString("shortDescription");
-        video.setDescription(description);
-        JSONObject clip = viewer.getJSONObject("clip");
-        video.setVideoUri(parseVideoUri(clip));
-        return video;
+            next.setUri(new URI(uri.toASCIIString() + "?after=" + URLEncoder.encode(endCursor, CHARSET)));
+        } catch (UnsupportedEncodingException e) {
+            throw new URISyntaxException(endCursor, e.getMessage());
+        }
+        return next;
+    }
+
+    /**
+     * @return the cursor of the page to load or <code>null</code> for the first page
+     */
+    private String getCursor(URI uri) {
+        return getParameter(uri, "after");
     }
 
-    private URI parseVideoUri(JSONObject clip) throws JSONException, URISyntaxException {
-        JSONObject videoFiles = clip.getJSONObject("videoFiles");
-        JSONArray edges = videoFiles.getJSONArray("edges");
-        URI bestUri = null;
-        int bestHeight = 0;
-        for (int i = 0; i < edges.length(); i++) {
-            JSONObject node = edges.getJSONObject(i).getJSONObject("node");
-            if(node.has("videoProfile")) {
-                JSONObject profile = node.getJSONObject("videoProfile");
-                Object h = profile.get("height");
-                if(h instanceof Integer) {
-                    int height = ((Integer) h).intValue();
-                    if(height > bestHeight) {
-                        bestHeight = height;
-                        bestUri = new URI(node.getString("publicLocation"));
+    /**
+     * @return the URL decoded value of a parameter of the query of the URI or <code>null</code>, if the parameter is
+     *         missing
+     */
+    private String getParameter(URI uri, String name) {
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith(name + "=")) {
+                    try {
+                        return URLDecoder.decode(param.substring(name.length() + 1), CHARSET);
+                    } catch (UnsupportedEncodingException e) {
+                        throw new IllegalStateException(CHARSET + " not supported", e);
                     }
                 }
             }
         }
-        return bestUri;
-    }
-
-    private static final String aBiszRequest = "{\n" +
-            "  \"variables\": {\"seriesFilter\": {\n" +
-            "    \"audioOnly\": {\"eq\": false},\n" +
-            "    \"title\": {\"startsWith\": \"A\"},\n" +
-            "    \"status\": {\"id\": {\"eq\": \"av:http://ard.de/ontologies/lifeCycle#published\"}}\n" +
-            "  }},\n" +
-            "  \"query\": \"query SeriesIndexPageQuery(\\n  $seriesFilter: SeriesFilter!\\n) {\\n  viewer {\\n    ...SeriesIndex_viewer_19SNIy\\n    id\\n  }\\n}\\n\\nfragment SeriesIndex_viewer_19SNIy on Viewer {\\n  seriesIndexAllSeries: allSeries(first: 1000, orderBy: TITLE_ASC, filter: $seriesFilter) {\\n    edges {\\n      node {\\n        __typename\\n        id\\n        title\\n        ...SeriesTeaserBox_node\\n        ...TeaserListItem_node\\n      }\\n    }\\n  }\\n}\\n\\nfragment SeriesTeaserBox_node on Node {\\n  __typename\\n  id\\n  ... on CreativeWorkInterface {\\n    ...TeaserImage_creativeWorkInterface\\n  }\\n  ... on SeriesInterface {\\n    ...SubscribeAction_series\\n    subscribed\\n    title\\n    ...LinkWithSlug_creativeWork\\n  }\\n}\\n\\nfragment TeaserListItem_node on Node {\\n  __typename\\n  id\\n  ... on SeriesInterface {\\n    ...LinkWithSlug_creativeWork\\n  }\\n  ... on CreativeWorkInterface {\\n    ...TeaserImage_creativeWorkInterface\\n  }\\n  ... on ClipInterface {\\n    title\\n  }\\n}\\n\\nfragment LinkWithSlug_creativeWork on CreativeWorkInterface {\\n  id\\n  slug\\n}\\n\\nfragment TeaserImage_creativeWorkInterface on CreativeWorkInterface {\\n  id\\n  teaserImages(first: 1) {\\n    edges {\\n      node {\\n        __typename\\n        shortDescription\\n        copyright\\n        id\\n      }\\n    }\\n  }\\n  defaultTeaserImage {\\n    __typename\\n    shortDescription\\n    copyright\\n    imageFiles(first: 1) {\\n      edges {\\n        node {\\n          __typename\\n          id\\n          publicLocation\\n          crops(first: 10, filter: {format: ASPECT_RATIO_16_9}) {\\n            count\\n            edges {\\n              node {\\n                __typename\\n                publicLocation\\n                width\\n                height\\n                id\\n              }\\n            }\\n          }\\n        }\\n      }\\n    }\\n    id\\n  }\\n}\\n\\nfragment SubscribeAction_series on SeriesInterface {\\n  id\\n  subscribed\\n}\\n\"\n" +
-            "}";
-
-    private static final String programOverviewRequest = "{\n" +
-            "  \"variables\": {\n" +
-            "    \"previousEpisodesFilter\": {\n" +
-            "      \"essences\": {\"empty\": {\"eq\": false}},\n" +
-            "      \"status\": {\"id\": {\"eq\": \"av:http://ard.de/ontologies/lifeCycle#published\"}}\n" +
-            "    },\n" +
-            "    \"clipCount\": 25,\n" +
-            "    \"latestEpisodeFilter\": {\"essences\": {\"empty\": {\"eq\": false}}},\n" +
-            "    \"id\": \"av:584f4ca83b467900117c3afb\"\n" +
-            "  },\n" +
-            "  \"query\": \"query SeriesPageRendererQuery(\\n  $id: ID!\\n  $clipCount: Int\\n  $previousEpisodesFilter: ProgrammeFilter\\n  $latestEpisodeFilter: ProgrammeFilter\\n) {\\n  viewer {\\n    ...SeriesPage_viewer_2sm1bc\\n    id\\n  }\\n}\\n\\nfragment SeriesPage_viewer_2sm1bc on Viewer {\\n  series(id: $id) {\\n    __typename\\n    id\\n    slug\\n    title\\n    shortDescription\\n    ...TeaserImage_creativeWorkInterface\\n    ...SeriesBrandBanner_series\\n    ...ChildContentRedirect_creativeWork\\n    ...HomoDigitalisWidget_series\\n    latestEpisode: episodes(orderBy: VERSIONFROM_DESC, first: 1, filter: $latestEpisodeFilter) {\\n      edges {\\n        node {\\n          __typename\\n          title\\n          kicker\\n          items(first: 30, filter: {essences: {empty: {eq: false}}, status: {id: {eq: \\\"av:http://ard.de/ontologies/lifeCycle#published\\\"}}}) {\\n            count\\n            ...ItemSlider_items\\n          }\\n          id\\n        }\\n      }\\n    }\\n    previousEpisodes: episodes(first: $clipCount, orderBy: VERSIONFROM_DESC, filter: $previousEpisodesFilter) {\\n      count\\n      pageInfo {\\n        hasNextPage\\n      }\\n      edges {\\n        node {\\n          __typename\\n          ...SmallTeaserBox_node\\n          id\\n        }\\n      }\\n    }\\n  }\\n}\\n\\nfragment TeaserImage_creativeWorkInterface on CreativeWorkInterface {\\n  id\\n  teaserImages(first: 1) {\\n    edges {\\n      node {\\n        __typename\\n        shortDescription\\n        copyright\\n        id\\n      }\\n    }\\n  }\\n  defaultTeaserImage {\\n    __typename\\n    shortDescription\\n    copyright\\n    imageFiles(first: 1) {\\n      edges {\\n        node {\\n          __typename\\n          id\\n          publicLocation\\n          crops(first: 10, filter: {format: ASPECT_RATIO_16_9}) {\\n            count\\n            edges {\\n              node {\\n                __typename\\n                publicLocation\\n                width\\n                height\\n                id\\n              }\\n            }\\n          }\\n        }\\n      }\\n    }\\n    id\\n  }\\n}\\n\\nfragment SeriesBrandBanner_series on SeriesInterface {\\n  ...SubscribeAction_series\\n  title\\n  shortDescription\\n  externalURLS(first: 1) {\\n    edges {\\n      node {\\n        __typename\\n        id\\n        url\\n        label\\n      }\\n    }\\n  }\\n  brandingImages(first: 1) {\\n    edges {\\n      node {\\n        __typename\\n        imageFiles(first: 1) {\\n          edges {\\n            node {\\n              __typename\\n              publicLocation\\n              id\\n            }\\n          }\\n        }\\n        id\\n      }\\n    }\\n  }\\n}\\n\\nfragment ChildContentRedirect_creativeWork on CreativeWorkInterface {\\n  categories(first: 100) {\\n    edges {\\n      node {\\n        __typename\\n        id\\n      }\\n    }\\n  }\\n}\\n\\nfragment HomoDigitalisWidget_series on SeriesInterface {\\n  title\\n}\\n\\nfragment ItemSlider_items on ItemConnection {\\n  edges {\\n    node {\\n      __typename\\n      ...SmallTeaserBox_node\\n      id\\n    }\\n  }\\n}\\n\\nfragment SmallTeaserBox_node on Node {\\n  id\\n  ... on CreativeWorkInterface {\\n    ...TeaserImage_creativeWorkInterface\\n  }\\n  ... on ClipInterface {\\n    id\\n    title\\n    kicker\\n    ...LinkWithSlug_creativeWork\\n    ...Bookmark_clip\\n    ...Duration_clip\\n    ...Progress_clip\\n  }\\n  ... on ProgrammeInterface {\\n    broadcasts(first: 1, orderBy: START_DESC) {\\n      edges {\\n        node {\\n          __typename\\n          start\\n          id\\n        }\\n      }\\n    }\\n  }\\n}\\n\\nfragment LinkWithSlug_creativeWork on CreativeWorkInterface {\\n  id\\n  slug\\n}\\n\\nfragment Bookmark_clip on ClipInterface {\\n  id\\n  bookmarked\\n  title\\n}\\n\\nfragment Duration_clip on ClipInterface {\\n  duration\\n}\\n\\nfragment Progress_clip on ClipInterface {\\n  myInteractions {\\n    __typename\\n    progress\\n    completed\\n    id\\n  }\\n}\\n\\nfragment SubscribeAction_series on SeriesInterface {\\n  id\\n  subscribed\\n}\\n\"\n" +
-            "}";
-
-    private static final String videoRequest = "{\"query\":\"query DetailPageRendererQuery(\\n  $clipId: ID!\\n  $isClip: Boolean!\\n  $isLivestream: Boolean!\\n  $livestream: ID!\\n) {\\n  viewer {\\n    ...DetailPage_viewer_22r5xP\\n    id\\n  }\\n}\\n\\nfragment DetailPage_viewer_22r5xP on Viewer {\\n  ...VideoPlayer_viewer_22r5xP\\n  ...ClipActions_viewer\\n  detailClip: clip(id: $clipId) {\\n    __typename\\n    id\\n    title\\n    kicker\\n    slug\\n    shortDescription\\n    ...ClipActions_clip\\n    ...ClipInfo_clip\\n    ...ChildContentRedirect_creativeWork\\n  }\\n}\\n\\nfragment VideoPlayer_viewer_22r5xP on Viewer {\\n  id\\n  clip(id: $clipId) @include(if: $isClip) {\\n    __typename\\n    id\\n    title\\n    ageRestriction\\n    videoFiles(first: 100) {\\n      edges {\\n        node {\\n          __typename\\n          id\\n          mimetype\\n          publicLocation\\n          videoProfile {\\n            __typename\\n            id\\n            width\\n          }\\n        }\\n      }\\n    }\\n    ...Track_clip\\n    ...Error_clip\\n    ...Settings_clip\\n    ...Finished_clip\\n    defaultTeaserImage @include(if: $isClip) {\\n      __typename\\n      imageFiles(first: 1) {\\n        edges {\\n          node {\\n            __typename\\n            id\\n            publicLocation\\n          }\\n        }\\n      }\\n      id\\n    }\\n    myInteractions {\\n      __typename\\n      completed\\n      progress\\n      id\\n    }\\n  }\\n  livestream(id: $livestream) @include(if: $isLivestream) {\\n    __typename\\n    id\\n    streamingUrls(first: 10, filter: {hasEmbeddedSubtitles: {eq: false}}) {\\n      edges {\\n        node {\\n          __typename\\n          id\\n          publicLocation\\n          hasEmbeddedSubtitles\\n        }\\n      }\\n    }\\n  }\\n}\\n\\nfragment ClipActions_viewer on Viewer {\\n  me {\\n    __typename\\n    bookmarks(first: 12) {\\n      ...BookmarkAction_bookmarks\\n    }\\n    id\\n  }\\n}\\n\\nfragment ClipActions_clip on ClipInterface {\\n  id\\n  bookmarked\\n  downloadable\\n  ...BookmarkAction_clip\\n  ...Rate_clip\\n  ...Share_clip\\n  ...Download_clip\\n}\\n\\nfragment ClipInfo_clip on ClipInterface {\\n  __typename\\n  id\\n  title\\n  kicker\\n  description\\n  shortDescription\\n  availableUntil\\n  ...Subtitles_clip\\n  ...Duration_clip\\n  ...FSKInfo_clip\\n  ... on ProgrammeInterface {\\n    publications(first: 1) {\\n      edges {\\n        node {\\n          __typename\\n          publishedBy {\\n            __typename\\n            name\\n            id\\n          }\\n          id\\n        }\\n      }\\n    }\\n    broadcasts(first: 1) {\\n      edges {\\n        node {\\n          __typename\\n          start\\n          id\\n        }\\n      }\\n    }\\n    episodeOf {\\n      __typename\\n      description\\n      id\\n      title\\n      scheduleInfo\\n      subscribed\\n      ...SubscribeAction_series\\n      ... on CreativeWorkInterface {\\n        ...LinkWithSlug_creativeWork\\n        ...TeaserImage_creativeWorkInterface\\n      }\\n    }\\n  }\\n  ... on ItemInterface {\\n    itemOf(first: 1) {\\n      edges {\\n        node {\\n          __typename\\n          publications(first: 1) {\\n            edges {\\n              node {\\n                __typename\\n                publishedBy {\\n                  __typename\\n                  name\\n                  id\\n                }\\n                id\\n              }\\n            }\\n          }\\n          broadcasts(first: 1) {\\n            edges {\\n              node {\\n                __typename\\n                start\\n                id\\n              }\\n            }\\n          }\\n          episodeOf {\\n            __typename\\n            id\\n            title\\n            scheduleInfo\\n            subscribed\\n            ...SubscribeAction_series\\n            ... on CreativeWorkInterface {\\n              ...LinkWithSlug_creativeWork\\n              ...TeaserImage_creativeWorkInterface\\n            }\\n          }\\n          id\\n        }\\n      }\\n    }\\n  }\\n}\\n\\nfragment ChildContentRedirect_creativeWork on CreativeWorkInterface {\\n  categories(first: 100) {\\n    edges {\\n      node {\\n        __typename\\n        id\\n      }\\n    }\\n  }\\n}\\n\\nfragment Subtitles_clip on ClipInterface {\\n  videoFiles(first: 100) {\\n    edges {\\n      node {\\n        __typename\\n        subtitles {\\n          edges {\\n            node {\\n              __typename\\n              timedTextFiles(filter: {mimetype: {eq: \\\"text/vtt\\\"}}) {\\n                edges {\\n                  node {\\n                    __typename\\n                    publicLocation\\n                    id\\n                  }\\n                }\\n              }\\n              id\\n            }\\n          }\\n        }\\n        id\\n      }\\n    }\\n  }\\n}\\n\\nfragment Duration_clip on ClipInterface {\\n  duration\\n}\\n\\nfragment FSKInfo_clip on ClipInterface {\\n  ageRestriction\\n}\\n\\nfragment SubscribeAction_series on SeriesInterface {\\n  id\\n  subscribed\\n}\\n\\nfragment LinkWithSlug_creativeWork on CreativeWorkInterface {\\n  id\\n  slug\\n}\\n\\nfragment TeaserImage_creativeWorkInterface on CreativeWorkInterface {\\n  id\\n  teaserImages(first: 1) {\\n    edges {\\n      node {\\n        __typename\\n        shortDescription\\n        copyright\\n        id\\n      }\\n    }\\n  }\\n  defaultTeaserImage {\\n    __typename\\n    shortDescription\\n    copyright\\n    imageFiles(first: 1) {\\n      edges {\\n        node {\\n          __typename\\n          id\\n          publicLocation\\n          crops(first: 10, filter: {format: ASPECT_RATIO_16_9}) {\\n            count\\n            edges {\\n              node {\\n                __typename\\n                publicLocation\\n                width\\n                height\\n                id\\n              }\\n            }\\n          }\\n        }\\n      }\\n    }\\n    id\\n  }\\n}\\n\\nfragment BookmarkAction_clip on ClipInterface {\\n  id\\n}\\n\\nfragment Rate_clip on ClipInterface {\\n  id\\n  reactions {\\n    likes\\n    dislikes\\n  }\\n  myInteractions {\\n    __typename\\n    reaction {\\n      __typename\\n      id\\n    }\\n    id\\n  }\\n}\\n\\nfragment Share_clip on ClipInterface {\\n  title\\n  id\\n  embeddable\\n  slug\\n}\\n\\nfragment Download_clip on ClipInterface {\\n  videoFiles(first: 100) {\\n    edges {\\n      node {\\n        __typename\\n        publicLocation\\n        videoProfile {\\n          __typename\\n          height\\n          id\\n        }\\n        id\\n      }\\n    }\\n  }\\n}\\n\\nfragment BookmarkAction_bookmarks on ClipRemoteConnection {\\n  count\\n  ...TeaserSlider_clipRemoteConnection\\n}\\n\\nfragment TeaserSlider_clipRemoteConnection on ClipRemoteConnection {\\n  edges {\\n    node {\\n      __typename\\n      ...SmallTeaserBox_node\\n      id\\n    }\\n  }\\n}\\n\\nfragment SmallTeaserBox_node on Node {\\n  id\\n  ... on CreativeWorkInterface {\\n    ...TeaserImage_creativeWorkInterface\\n  }\\n  ... on ClipInterface {\\n    id\\n    title\\n    kicker\\n    ...LinkWithSlug_creativeWork\\n    ...Bookmark_clip\\n    ...Duration_clip\\n    ...Progress_clip\\n  }\\n  ... on ProgrammeInterface {\\n    broadcasts(first: 1, orderBy: START_DESC) {\\n      edges {\\n        node {\\n          __typename\\n          start\\n          id\\n        }\\n      }\\n    }\\n  }\\n}\\n\\nfragment Bookmark_clip on ClipInterface {\\n  id\\n  bookmarked\\n  title\\n}\\n\\nfragment Progress_clip on ClipInterface {\\n  myInteractions {\\n    __typename\\n    progress\\n    completed\\n    id\\n  }\\n}\\n\\nfragment Track_clip on ClipInterface {\\n  videoFiles(first: 100) {\\n    edges {\\n      node {\\n        __typename\\n        publicLocation\\n        subtitles {\\n          edges {\\n            node {\\n              id\\n              language\\n              closed\\n              __typename\\n              timedTextFiles(filter: {mimetype: {eq: \\\"text/vtt\\\"}}) {\\n                edges {\\n                  node {\\n                    __typename\\n                    id\\n                    mimetype\\n                    publicLocation\\n                  }\\n                }\\n              }\\n            }\\n          }\\n        }\\n        id\\n      }\\n    }\\n  }\\n}\\n\\nfragment Error_clip on ClipInterface {\\n  ageRestriction\\n}\\n\\nfragment Settings_clip on ClipInterface {\\n  videoFiles(first: 100) {\\n    edges {\\n      node {\\n        __typename\\n        id\\n        mimetype\\n        publicLocation\\n        videoProfile {\\n          __typename\\n          id\\n          width\\n          height\\n        }\\n      }\\n    }\\n  }\\n}\\n\\nfragment Finished_clip on ClipInterface {\\n  recommendations(first: 3, filter: {audioOnly: {eq: false}, withEssences: {eq: true}}) {\\n    recommendationId\\n    edges {\\n      node {\\n        __typename\\n        ...FinishedSuggestedItem_clip\\n        id\\n      }\\n    }\\n  }\\n}\\n\\nfragment FinishedSuggestedItem_clip on ClipInterface {\\n  id\\n  title\\n  duration\\n  ...TeaserImage_creativeWorkInterface\\n}\\n\",\"variables\":{\"clipId\":\"av:5a96a98144ea9900178bd207\",\"isClip\":true,\"isLivestream\":false,\"livestream\":\"Livestream:\"}}";
-}
\ No newline at end of file
+        return null;
+    }
+
+    /**
+     * Resolves description and video URI of all given video pages. Clips, which are not cached, are requested in batches
+     * of {@link #eagerBatchSize} clips, which are executed concurrently. Clips, which are not resolved within
+     * {@link #eagerTimeout} seconds or fail, keep their placeholder and are resolved, when the video page is opened.
+     */
+    private void resolveClips(List<IWebPage> pages) {
+        ExecutorService executor = clipResolver;
+        if (executor == null) {
+            return;
+        }
+
+        List<String> missing = new ArrayList<String>();
+        for (IWebPage page : pages) {
+            if (page instanceof IVideoPage) {
+                String id = page.getUri().getPath().substring(1);
+                if (clipCache.peek(clipKey(id)) == null) {
+                    missing.add(id);
+                }
+            }
+        }
+
+        List<Future<?>> batches = new ArrayList<Future<?>>();
+        int batchSize = Math.max(1, eagerBatchSize);
+        for (int i = 0; i < missing.size(); i += batchSize) {
+            final List<String> batch = missing.subList(i, Math.min(i + batchSize, missing.size()));
+            batches.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    fetchClipBatch(batch);
+                    return null;
+                }
+            }));
+        }
+
+        long deadline = System.currentTimeMillis() + eagerTimeout * 1000L;
+        for (Future<?> batch : batches) {
+            try {
+                batch.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                logger.log(LogService.LOG_WARNING, "Clip batch not resolved within " + eagerTimeout + " seconds");
+            } catch (ExecutionException e) {
+                logger.log(LogService.LOG_WARNING, "Couldn't resolve clip batch", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        for (IWebPage page : pages) {
+            if (page instanceof IVideoPage) {
+                String id = page.getUri().getPath().substring(1);
+                ClipDetails clip = clipCache.peek(clipKey(id));
+                if (clip != null) {
+                    IVideoPage video = (IVideoPage) page;
+                    video.setDescription(clip.getDescription());
+                    video.setVideoUri(selectVideoUri(clip, defaultProfile));
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests the details of several clips with one aliased GraphQL request and stores them in the clip cache. Clips,
+     * which are already loading, are skipped, and video pages opened meanwhile wait for the batch instead of sending
+     * their own request. Batches, which didn't complete in time, still fill the cache, when they are done.
+     */
+    private void fetchClipBatch(List<String> ids) throws IOException {
+        final Map<String, String> keys = new LinkedHashMap<String, String>();
+        for (String id : ids) {
+            keys.put(clipKey(id), id);
+        }
+
+        clipCache.load(keys.keySet(), new ResponseCache.BatchLoader<ClipDetails>() {
+            @Override
+            public Map<String, ClipDetails> load(List<String> claimed) throws IOException {
+                // pad the batch to one of a few sizes, so that remainders don't create a new operation each
+                int size = batchSize(claimed.size());
+                List<String> batch = new ArrayList<String>(size);
+                for (int i = 0; i < size; i++) {
+                    batch.add(keys.get(claimed.get(Math.min(i, claimed.size() - 1))));
+                }
+
+                String variables = GraphQuery.clipBatchVariables(batch);
+                Map<String, ClipDetails> clips = execute(GraphQuery.clipBatch(size), variables,
+                        new ResponseHandler<Map<String, ClipDetails>>() {
+                            @Override
+                            public Map<String, ClipDetails> handle(Reader response) throws IOException {
+                                return decoder.decodeClips(response);
+                            }
+                        });
+                Map<String, ClipDetails> result = new HashMap<String, ClipDetails>();
+                for (int i = 0; i < claimed.size(); i++) {
+                    ClipDetails clip = clips.get("c" + i);
+                    if (clip != null) {
+                        result.put(claimed.get(i), clip);
+                    }
+                }
+                return result;
+            }
+        }, clipTtl * 1000L);
+    }
+
+    /**
+     * @return the smallest power of two, which is not less than the given count, limited to {@link #eagerBatchSize}
+     */
+    private int batchSize(int count) {
+        int max = Math.max(1, eagerBatchSize);
+        int size = 1;
+        while (size < count && size < max) {
+            size *= 2;
+        }
+        return Math.min(size, max);
+    }
+
+    /**
+     * Adds copies of the cached pages to the given page, so that the cached pages are not modified by the callers
+     */
+    private void addCopies(IOverviewPage page, List<IWebPage> pages) {
+        for (IWebPage p : pages) {
+            page.getPages().add(copy(p));
+        }
+    }
+
+    private IWebPage copy(IWebPage page) {
+        if (page instanceof IVideoPage) {
+            IVideoPage orig = (IVideoPage) page;
+            VideoPage video = new VideoPage();
+            video.setParser(orig.getParser());
+            video.setTitle(orig.getTitle());
+            video.setUri(orig.getUri());
+            video.setDescription(orig.getDescription());
+            video.setDuration(orig.getDuration());
+            video.setThumbnail(orig.getThumbnail());
+            video.setVideoUri(orig.getVideoUri());
+            if (orig.getPublishDate() != null) {
+                video.setPublishDate((Calendar) orig.getPublishDate().clone());
+            }
+            return video;
+        } else {
+            OverviewPage overview = new OverviewPage();
+            overview.setParser(page.getParser());
+            overview.setTitle(page.getTitle());
+            overview.setUri(page.getUri());
+            return overview;
+        }
+    }
+
+    /**
+     * Resolves description and video URI of a video page. The video URI is selected for the rendition profile given
+     * by the parameter <code>profile</code> of the page URI, e.g.
+     * <code>br://video/av:5a96a98144ea9900178bd207?profile=mobile</code>
+     */
+    private IVideoPage parseVideoPage(IWebPage page) throws IOException {
+        IVideoPage video = (IVideoPage) page;
+        String profileName = getParameter(page.getUri(), "profile");
+        RenditionProfile profile = defaultProfile;
+        if (profileName != null) {
+            if (renditionProfiles.containsKey(profileName)) {
+                profile = renditionProfiles.get(profileName);
+            } else {
+                logger.log(LogService.LOG_WARNING, "Unknown rendition profile " + profileName + ", using "
+                        + profile.getName());
+            }
+        }
+        ClipDetails clip = loadClip(page.getUri().getPath().substring(1));
+        video.setDescription(clip.getDescription());
+        video.setVideoUri(selectVideoUri(clip, profile));
+        return video;
+    }
+
+    /**
+     * Returns the details of a clip from the clip cache or requests them
+     */
+    private ClipDetails loadClip(final String id) throws IOException {
+        return clipCache.get(clipKey(id), new Callable<ClipDetails>() {
+            @Override
+            public ClipDetails call() throws Exception {
+                return fetchClipDetails(id);
+            }
+        }, clipTtl * 1000L);
+    }
+
+    private ClipDetails fetchClipDetails(String id) throws IOException {
+        String variables = GraphQuery.clipDetailsVariables(id);
+        return execute(GraphQuery.CLIP_DETAILS, variables, new ResponseHandler<ClipDetails>() {
+            @Override
+            public ClipDetails handle(Reader response) throws IOException {
+                return decoder.decodeClip(response);
+            }
+        });
+    }
+
+    /**
+     * Executes a GraphQL operation. If persisted queries are enabled, the request is sent with the query hash only
+     * first. If the endpoint doesn't know the query yet, it is sent again with the query text, so that the endpoint
+     * registers the query. If the endpoint rejects the hash-only request with another GraphQL error or an HTTP error,
+     * it is sent again with the query text only. If that succeeds and the endpoint didn't fail with a server error,
+     * persisted queries are disabled until the bundle is restarted.
+     */
+    private <T> T execute(GraphQuery query, String variables, ResponseHandler<T> handler) throws IOException {
+        boolean persisted = persistedQueries && persistedQueriesSupported;
+        boolean unsupported = false;
+        boolean retryWithoutHash = false;
+        if (persisted) {
+            try {
+                return exchange(query, query.createPersistedRequest(variables), handler);
+            } catch (GraphQLException e) {
+                // only an explicit answer disables persisted queries, other errors may be temporary
+                unsupported = e.hasError(PERSISTED_QUERY_NOT_SUPPORTED);
+                retryWithoutHash = !e.hasError(PERSISTED_QUERY_NOT_FOUND);
+                logger.log(LogService.LOG_DEBUG, "Persisted query " + query + " failed: " + e.getErrors());
+            } catch (GraphTransport.HttpStatusException e) {
+                // a server error may be temporary, retry with the query text, but keep persisted queries enabled
+                unsupported = e.getStatus() < 500;
+                retryWithoutHash = true;
+                logger.log(LogService.LOG_DEBUG, "Persisted query " + query + " failed: " + e.getMessage());
+            }
+        }
+
+        // register the query only, if the endpoint answered, that it doesn't know the hash
+        boolean register = persisted && !unsupported && !retryWithoutHash;
+        T result = exchange(query, query.createRequest(variables, register), handler);
+        if (unsupported) {
+            logger.log(LogService.LOG_INFO, "GraphQL endpoint doesn't support persisted queries. Sending query text from now on");
+            persistedQueriesSupported = false;
+        }
+        return result;
+    }
+
+    /**
+     * Sends one request and decodes the response. The request is recorded in the metrics of the operation.
+     */
+    private <T> T exchange(GraphQuery query, byte[] request, ResponseHandler<T> handler) throws IOException {
+        OperationMetrics operation = metrics.getOperation(query.getOperationName());
+        GraphTransport.Exchange exchange = new GraphTransport.Exchange();
+        try {
+            T result = handler.handle(transport.post(request, exchange));
+            long end = System.nanoTime();
+            long parseTime = end - exchange.getFirstByte() - exchange.getReadTime();
+            operation.record(exchange.getBytes(), exchange.getTimeToFirstByte(), end - exchange.getStart(), parseTime);
+            return result;
+        } catch (GraphQLException e) {
+            if (e.hasError(PERSISTED_QUERY_NOT_FOUND)) {
+                operation.recordPersistedQueryMiss();
+            } else {
+                operation.recordError();
+            }
+            throw e;
+        } catch (IOException e) {
+            operation.recordError();
+            throw e;
+        }
+    }
+
+    private static String clipKey(String id) {
+        return ResponseCache.key(GraphQuery.CLIP_DETAILS.getOperationName(), id);
+    }
+
+    private interface ResponseHandler<T> {
+        T handle(Reader response) throws IOException;
+    }
+}
@@ -0,0 +1,459 @@
+package de.berlios.vch.parser.br;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Local index of all series and their episodes. The index is filled by the {@link CatalogIndexer} and stored in a
+ * compact binary file. The whole index is kept on the heap. It answers the A-Z lists and prefix and substring searches
+ * without a request to the GraphQL endpoint.
+ * <p>
+ * Other bundles get the index with {@link IBrMediathekParser#getCatalogIndex()} and can only read it. Only the
+ * {@link CatalogIndexer} changes it.
+ * </p>
+ */
+public class CatalogIndex {
+
+    private static final int MAGIC = 0x42524958; // BRIX
+    private static final int VERSION = 1;
+
+    private static final String CHARSET = BrMediathekParser.CHARSET;
+
+    private static final Comparator<Series> TITLE_ORDER = new Comparator<Series>() {
+        @Override
+        public int compare(Series s1, Series s2) {
+            return s1.key.compareTo(s2.key);
+        }
+    };
+
+    /** series by letter in the order of the A-Z list */
+    private final Map<String, List<Series>> seriesByLetter = new TreeMap<String, List<Series>>();
+
+    /** episodes by series id, the newest episode first */
+    private final Map<String, List<Episode>> episodesBySeries = new HashMap<String, List<Episode>>();
+
+    private long updated = 0;
+
+    private volatile SearchIndex searchIndex;
+
+    /**
+     * @return <code>true</code>, if the series of the letter have been indexed
+     */
+    public synchronized boolean hasLetter(String letter) {
+        return seriesByLetter.containsKey(letter);
+    }
+
+    /**
+     * @return <code>true</code>, if the index doesn't contain any series yet
+     */
+    public synchronized boolean isEmpty() {
+        return seriesByLetter.isEmpty();
+    }
+
+    /**
+     * @return the time of the last update of the index in milliseconds since the epoch
+     */
+    public synchronized long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return the series of the letter ordered by title or an empty list, if the letter has not been indexed yet
+     */
+    public synchronized List<Series> getSeries(String letter) {
+        List<Series> series = seriesByLetter.get(letter);
+        return series != null ? series : Collections.<Series> emptyList();
+    }
+
+    /**
+     * @return the indexed episodes of a series, the newest episode first
+     */
+    public synchronized List<Episode> getEpisodes(String seriesId) {
+        List<Episode> episodes = episodesBySeries.get(seriesId);
+        return episodes != null ? episodes : Collections.<Episode> emptyList();
+    }
+
+    /**
+     * @return the ids of all indexed series
+     */
+    public synchronized List<String> getSeriesIds() {
+        List<String> ids = new ArrayList<String>();
+        for (List<Series> series : seriesByLetter.values()) {
+            for (Series s : series) {
+                ids.add(s.id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces the series of a letter. Episodes of series, which don't exist anymore, are removed.
+     */
+    synchronized void updateLetter(String letter, List<Series> series) {
+        List<Series> sorted = new ArrayList<Series>(series);
+        Collections.sort(sorted, TITLE_ORDER);
+        List<Series> old = seriesByLetter.put(letter, Collections.unmodifiableList(sorted));
+        if (old != null) {
+            Set<String> ids = new HashSet<String>();
+            for (Series s : sorted) {
+                ids.add(s.id);
+            }
+            for (Series s : old) {
+                if (!ids.contains(s.id)) {
+                    episodesBySeries.remove(s.id);
+                }
+            }
+        }
+        changed();
+    }
+
+    /**
+     * Merges episodes into the index. Known episodes are updated, new ones are added and the episodes are ordered by
+     * broadcast date, the newest episode first.
+     *
+     * @return the number of episodes, which have not been in the index before
+     */
+    synchronized int mergeEpisodes(String seriesId, List<Episode> episodes) {
+        Map<String, Episode> merged = new LinkedHashMap<String, Episode>();
+        List<Episode> old = episodesBySeries.get(seriesId);
+        if (old != null) {
+            for (Episode e : old) {
+                merged.put(e.id, e);
+            }
+        }
+        int added = 0;
+        for (Episode e : episodes) {
+            if (merged.put(e.id, e) == null) {
+                added++;
+            }
+        }
+        List<Episode> sorted = new ArrayList<Episode>(merged.values());
+        Collections.sort(sorted, new Comparator<Episode>() {
+            @Override
+            public int compare(Episode e1, Episode e2) {
+                return e1.broadcast < e2.broadcast ? 1 : (e1.broadcast == e2.broadcast ? 0 : -1);
+            }
+        });
+        episodesBySeries.put(seriesId, Collections.unmodifiableList(sorted));
+        changed();
+        return added;
+    }
+
+    /**
+     * @return series, whose title starts with the given prefix. The search is case insensitive.
+     */
+    public List<Series> searchSeriesByPrefix(String prefix, int limit) {
+        SearchIndex index = getSearchIndex();
+        String key = normalize(prefix);
+        int pos = Arrays.binarySearch(index.seriesKeys, key);
+        if (pos < 0) {
+            pos = -(pos + 1);
+        }
+        List<Series> result = new ArrayList<Series>();
+        for (int i = pos; i < index.series.length && result.size() < limit && index.seriesKeys[i].startsWith(key); i++) {
+            result.add(index.series[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return series, whose title contains the given string. The search is case insensitive.
+     */
+    public List<Series> searchSeries(String substring, int limit) {
+        SearchIndex index = getSearchIndex();
+        String key = normalize(substring);
+        List<Series> result = new ArrayList<Series>();
+        for (int i = 0; i < index.series.length && result.size() < limit; i++) {
+            if (index.seriesKeys[i].contains(key)) {
+                result.add(index.series[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return episodes, whose title contains the given string. The search is case insensitive.
+     */
+    public List<Episode> searchEpisodes(String substring, int limit) {
+        SearchIndex index = getSearchIndex();
+        String key = normalize(substring);
+        List<Episode> result = new ArrayList<Episode>();
+        for (int i = 0; i < index.episodes.length && result.size() < limit; i++) {
+            if (index.episodeKeys[i].contains(key)) {
+                result.add(index.episodes[i]);
+            }
+        }
+        return result;
+    }
+
+    private void changed() {
+        updated = System.currentTimeMillis();
+        searchIndex = null;
+    }
+
+    private SearchIndex getSearchIndex() {
+        SearchIndex index = searchIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = searchIndex;
+                if (index == null) {
+                    index = new SearchIndex(seriesByLetter.values(), episodesBySeries.values());
+                    searchIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Writes the index to a file. The index is written to a temporary file first, which replaces the old file
+     * afterwards, so that a crash doesn't leave a broken index behind.
+     */
+    synchronized void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(updated);
+            out.writeInt(seriesByLetter.size());
+            for (Map.Entry<String, List<Series>> entry : seriesByLetter.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Series s : entry.getValue()) {
+                    writeString(out, s.id);
+                    writeString(out, s.title);
+                }
+            }
+            out.writeInt(episodesBySeries.size());
+            for (Map.Entry<String, List<Episode>> entry : episodesBySeries.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Episode e : entry.getValue()) {
+                    writeString(out, e.id);
+                    writeString(out, e.title);
+                    out.writeLong(e.duration);
+                    out.writeLong(e.broadcast);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Couldn't replace " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Couldn't rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Loads an index file, which has been written with {@link #save(File)}. The file is read completely and decoded into
+     * this index, so it is kept on the heap like an index, which has been crawled.
+     *
+     * @throws IOException
+     *             if the file can't be read or is corrupt. The index is not changed in this case.
+     */
+    synchronized void load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() > Integer.MAX_VALUE) {
+                throw new IOException("Index file " + file + " is too large");
+            }
+            byte[] content = new byte[(int) raf.length()];
+            raf.readFully(content);
+            ByteBuffer buf = ByteBuffer.wrap(content);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("Unsupported index file " + file);
+            }
+            long fileUpdated = buf.getLong();
+
+            Map<String, List<Series>> letters = new TreeMap<String, List<Series>>();
+            int letterCount = readCount(buf);
+            for (int i = 0; i < letterCount; i++) {
+                String letter = readString(buf);
+                int count = readCount(buf);
+                List<Series> series = new ArrayList<Series>(count);
+                for (int j = 0; j < count; j++) {
+                    series.add(new Series(readString(buf), readString(buf), letter));
+                }
+                letters.put(letter, Collections.unmodifiableList(series));
+            }
+
+            Map<String, List<Episode>> episodes = new HashMap<String, List<Episode>>();
+            int seriesCount = readCount(buf);
+            for (int i = 0; i < seriesCount; i++) {
+                String seriesId = readString(buf);
+                int count = readCount(buf);
+                List<Episode> list = new ArrayList<Episode>(count);
+                for (int j = 0; j < count; j++) {
+                    list.add(new Episode(readString(buf), seriesId, readString(buf), buf.getLong(), buf.getLong()));
+                }
+                episodes.put(seriesId, Collections.unmodifiableList(list));
+            }
+
+            seriesByLetter.clear();
+            seriesByLetter.putAll(letters);
+            episodesBySeries.clear();
+            episodesBySeries.putAll(episodes);
+            updated = fileUpdated;
+            searchIndex = null;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Index file " + file + " is truncated");
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s != null ? s : "").getBytes(CHARSET);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) throws IOException {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            throw new IOException("Invalid string length " + length + " at position " + (buf.position() - 4));
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Reads the number of entries of a list. Each entry takes at least 4 bytes, so a count, which doesn't fit into the
+     * rest of the file, is corrupt and must not be used to allocate the list.
+     */
+    private static int readCount(ByteBuffer buf) throws IOException {
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / 4) {
+            throw new IOException("Invalid entry count " + count + " at position " + (buf.position() - 4));
+        }
+        return count;
+    }
+
+    private static String normalize(String s) {
+        return s != null ? s.toLowerCase(Locale.GERMAN) : "";
+    }
+
+    /**
+     * Immutable arrays of all series and episodes with their normalized titles, which are built on the first search
+     * after a change of the index
+     */
+    private static class SearchIndex {
+        private final Series[] series;
+        private final String[] seriesKeys;
+        private final Episode[] episodes;
+        private final String[] episodeKeys;
+
+        private SearchIndex(Iterable<List<Series>> allSeries, Iterable<List<Episode>> allEpisodes) {
+            List<Series> seriesList = new ArrayList<Series>();
+            for (List<Series> list : allSeries) {
+                seriesList.addAll(list);
+            }
+            Collections.sort(seriesList, TITLE_ORDER);
+            series = seriesList.toArray(new Series[seriesList.size()]);
+            seriesKeys = new String[series.length];
+            for (int i = 0; i < series.length; i++) {
+                seriesKeys[i] = series[i].key;
+            }
+
+            List<Episode> episodeList = new ArrayList<Episode>();
+            for (List<Episode> list : allEpisodes) {
+                episodeList.addAll(list);
+            }
+            episodes = episodeList.toArray(new Episode[episodeList.size()]);
+            episodeKeys = new String[episodes.length];
+            for (int i = 0; i < episodes.length; i++) {
+                episodeKeys[i] = normalize(episodes[i].title);
+            }
+        }
+    }
+
+    public static class Series {
+        private final String id;
+        private final String title;
+        private final String letter;
+        private final String key;
+
+        public Series(String id, String title, String letter) {
+            this.id = id;
+            this.title = title;
+            this.letter = letter;
+            this.key = normalize(title);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getLetter() {
+            return letter;
+        }
+    }
+
+    public static class Episode {
+        private final String id;
+        private final String seriesId;
+        private final String title;
+        private final long duration;
+        private final long broadcast;
+
+        public Episode(String id, String seriesId, String title, long duration, long broadcast) {
+            this.id = id;
+            this.seriesId = seriesId;
+            this.title = title;
+            this.duration = duration;
+            this.broadcast = broadcast;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getSeriesId() {
+            return seriesId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return the duration in seconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return the broadcast date in milliseconds since the epoch
+         */
+        public long getBroadcast() {
+            return broadcast;
+        }
+    }
+}
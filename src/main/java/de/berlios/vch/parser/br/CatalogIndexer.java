@@ -0,0 +1,198 @@
+package de.berlios.vch.parser.br;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.service.log.LogService;
+
+import de.berlios.vch.parser.IVideoPage;
+import de.berlios.vch.parser.IWebPage;
+
+/**
+ * Crawls the series of all letters and the latest episodes of each series into the {@link CatalogIndex}. Each run
+ * updates the index incrementally: the A-Z lists are replaced and new episodes are merged into the known ones. Like the
+ * {@link EpisodeFeed}, the first pages of several series are requested at once and the episodes of a series are only
+ * read until the first indexed one. The index is saved after each letter list and regularly while the episodes are
+ * crawled.
+ */
+class CatalogIndexer implements Runnable {
+
+    private static final int SAVE_INTERVAL = 100;
+
+    private final BrMediathekParser parser;
+
+    private final CatalogIndex index;
+
+    private final File file;
+
+    private final LogService logger;
+
+    private final long requestDelay;
+
+    private final boolean indexEpisodes;
+
+    private final int batchSize;
+
+    private final int pageSize;
+
+    private final int maxPages;
+
+    /**
+     * @param requestDelay
+     *            time in milliseconds to wait between two requests, so that the crawler doesn't hammer the endpoint
+     * @param indexEpisodes
+     *            whether to crawl the episodes of each series, too
+     * @param batchSize
+     *            number of series, whose first pages are requested at once
+     * @param pageSize
+     *            number of episodes per page
+     * @param maxPages
+     *            maximum number of pages, which are loaded per series to find the first indexed episode
+     */
+    CatalogIndexer(BrMediathekParser parser, CatalogIndex index, File file, LogService logger, long requestDelay,
+            boolean indexEpisodes, int batchSize, int pageSize, int maxPages) {
+        this.parser = parser;
+        this.index = index;
+        this.file = file;
+        this.logger = logger;
+        this.requestDelay = requestDelay;
+        this.indexEpisodes = indexEpisodes;
+        this.batchSize = batchSize;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+    }
+
+    @Override
+    public void run() {
+        try {
+            logger.log(LogService.LOG_INFO, "Updating BR Mediathek catalog index");
+            crawlLetters();
+            if (indexEpisodes) {
+                crawlEpisodes();
+            }
+            save();
+            logger.log(LogService.LOG_INFO, "BR Mediathek catalog index updated");
+        } catch (InterruptedException e) {
+            logger.log(LogService.LOG_INFO, "Update of BR Mediathek catalog index interrupted");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // catch everything, an exception would cancel the scheduled updates
+            logger.log(LogService.LOG_ERROR, "Couldn't update BR Mediathek catalog index", e);
+        }
+    }
+
+    private void crawlLetters() throws InterruptedException {
+        for (String letter : parser.getLetters()) {
+            try {
+                List<CatalogIndex.Series> series = new ArrayList<CatalogIndex.Series>();
+                String after = null;
+                do {
+                    ResultPage page = parser.fetchAlphabetPage(letter, after);
+                    for (IWebPage program : page.getPages()) {
+                        series.add(new CatalogIndex.Series(getId(program), program.getTitle(), letter));
+                    }
+                    after = page.hasNextPage() ? page.getEndCursor() : null;
+                    pause();
+                } while (after != null);
+                index.updateLetter(letter, series);
+            } catch (IOException e) {
+                logger.log(LogService.LOG_WARNING, "Couldn't index series of letter " + letter, e);
+            }
+        }
+        save();
+    }
+
+    private void crawlEpisodes() throws InterruptedException {
+        List<String> ids = index.getSeriesIds();
+        int count = 0;
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            List<String> batch = ids.subList(i, Math.min(ids.size(), i + batchSize));
+            Map<String, ResultPage> pages;
+            try {
+                pages = parser.fetchProgramPages(batch, pageSize);
+            } catch (IOException e) {
+                logger.log(LogService.LOG_WARNING, "Couldn't index episodes of " + batch, e);
+                pause();
+                continue;
+            }
+            pause();
+            for (String seriesId : batch) {
+                ResultPage page = pages.get(seriesId);
+                if (page != null) {
+                    try {
+                        index.mergeEpisodes(seriesId, crawlNewEpisodes(seriesId, page));
+                    } catch (IOException e) {
+                        logger.log(LogService.LOG_WARNING, "Couldn't index episodes of series " + seriesId, e);
+                    }
+                }
+                if (++count % SAVE_INTERVAL == 0) {
+                    save();
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the episodes of a series, which are not indexed yet. The episodes are ordered by version, newest first,
+     * so a page, which contains an indexed episode, is the last one to read. The whole page is read, because an indexed
+     * episode with a new version is moved to the top and may hide new episodes behind it. Series, which haven't been
+     * indexed before, only get the episodes of the first page.
+     */
+    private List<CatalogIndex.Episode> crawlNewEpisodes(String seriesId, ResultPage page) throws IOException,
+            InterruptedException {
+        Set<String> known = new HashSet<String>();
+        for (CatalogIndex.Episode episode : index.getEpisodes(seriesId)) {
+            known.add(episode.getId());
+        }
+
+        List<CatalogIndex.Episode> episodes = new ArrayList<CatalogIndex.Episode>();
+        int pages = 1;
+        while (true) {
+            boolean foundKnown = false;
+            for (IWebPage p : page.getPages()) {
+                if (p instanceof IVideoPage) {
+                    IVideoPage video = (IVideoPage) p;
+                    String id = getId(video);
+                    if (known.contains(id)) {
+                        foundKnown = true;
+                        continue;
+                    }
+                    long broadcast = video.getPublishDate() != null ? video.getPublishDate().getTimeInMillis() : 0;
+                    episodes.add(new CatalogIndex.Episode(id, seriesId, video.getTitle(), video.getDuration(), broadcast));
+                }
+            }
+            if (foundKnown || known.isEmpty() || !page.hasNextPage() || pages >= maxPages) {
+                return episodes;
+            }
+            page = parser.fetchProgramPage(seriesId, pageSize, page.getEndCursor());
+            pages++;
+            pause();
+        }
+    }
+
+    private void save() {
+        try {
+            index.save(file);
+        } catch (IOException e) {
+            logger.log(LogService.LOG_WARNING, "Couldn't save BR Mediathek catalog index to " + file, e);
+        }
+    }
+
+    private void pause() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (requestDelay > 0) {
+            Thread.sleep(requestDelay);
+        }
+    }
+
+    private String getId(IWebPage page) {
+        return page.getUri().getPath().substring(1);
+    }
+}
@@ -0,0 +1,30 @@
+package de.berlios.vch.parser.br;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The details of a clip, which are resolved by a separate GraphQL lookup, when the user opens a video page. All
+ * renditions are kept, so that the video file can be selected for any {@link RenditionProfile} without another lookup.
+ */
+class ClipDetails {
+
+    private final String description;
+
+    private final List<Rendition> renditions;
+
+    ClipDetails(String description, List<Rendition> renditions) {
+        this.description = description;
+        this.renditions = renditions != null ? Collections.unmodifiableList(new ArrayList<Rendition>(renditions))
+                : Collections.<Rendition> emptyList();
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public List<Rendition> getRenditions() {
+        return renditions;
+    }
+}
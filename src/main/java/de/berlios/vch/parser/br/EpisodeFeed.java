@@ -0,0 +1,337 @@
+package de.berlios.vch.parser.br;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.osgi.service.log.LogService;
+
+import de.berlios.vch.parser.IVideoPage;
+import de.berlios.vch.parser.IWebPage;
+
+/**
+ * Feed of the new episodes of subscribed series. For each series a watermark is kept, which consists of the ids of the
+ * latest known episodes. The episodes are ordered by version, newest first, so a poll only reads pages until one of
+ * them contains a known episode. That page is read completely, because a known episode with a new version moves to
+ * the top and may hide new episodes behind it. The first pages of many series are requested at once with
+ * {@link GraphQuery#seriesEpisodesBatch(int)}, further pages are only loaded for series with more new episodes than
+ * fit on one page. So the cost of a poll grows with the number of new episodes and not with the size of the catalog.
+ * <p>
+ * The first poll of a series subscribes it and only sets its watermark. The watermarks are saved in a properties file.
+ * </p>
+ * <p>
+ * The lock of the feed only guards the watermarks, the requests are sent without holding it. So subscriptions and
+ * {@link #save()} don't wait for a running poll.
+ * </p>
+ */
+public class EpisodeFeed implements Runnable {
+
+    /** number of known episode ids per series. More than one, so that a depublished episode doesn't lose the watermark */
+    private static final int WATERMARK_SIZE = 20;
+
+    private final BrMediathekParser parser;
+
+    private final File file;
+
+    private final LogService logger;
+
+    private final int batchSize;
+
+    private final int pageSize;
+
+    private final int maxPages;
+
+    /** known episode ids of each subscribed series, newest first */
+    private final Map<String, List<String>> watermarks = new LinkedHashMap<String, List<String>>();
+
+    /** serializes the writes of the file */
+    private final Object fileLock = new Object();
+
+    /**
+     * @param file
+     *            the file, in which the watermarks are saved, or <code>null</code> to keep them in memory only
+     * @param batchSize
+     *            number of series, which are polled with one request
+     * @param pageSize
+     *            number of episodes, which are requested per series and page
+     * @param maxPages
+     *            maximum number of pages, which are loaded per series to find the watermark
+     */
+    EpisodeFeed(BrMediathekParser parser, File file, LogService logger, int batchSize, int pageSize, int maxPages) {
+        this.parser = parser;
+        this.file = file;
+        this.logger = logger;
+        this.batchSize = batchSize;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * Polls all subscribed series, notifies the {@link IEpisodeFeedListener}s and saves the watermarks
+     */
+    @Override
+    public void run() {
+        try {
+            Map<String, List<IVideoPage>> newEpisodes = poll(getSubscriptions());
+            for (Entry<String, List<IVideoPage>> entry : newEpisodes.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    parser.fireNewEpisodes(entry.getKey(), entry.getValue());
+                }
+            }
+            save();
+        } catch (Exception e) {
+            // catch everything, an exception would cancel the scheduled polls
+            logger.log(LogService.LOG_ERROR, "Couldn't poll the episode feed", e);
+        }
+    }
+
+    /**
+     * Returns the episodes of a series, which have been published since the last poll, and moves the watermark to the
+     * newest episode. If the series hasn't been polled before, it is subscribed and an empty list is returned. The
+     * watermarks are saved afterwards.
+     *
+     * @return the new episodes, newest first
+     */
+    public List<IVideoPage> poll(String seriesId) throws IOException {
+        ResultPage page = parser.fetchProgramPage(seriesId, pageSize, null);
+        List<IVideoPage> newEpisodes = update(seriesId, page);
+        save();
+        return newEpisodes;
+    }
+
+    /**
+     * Polls several series like {@link #poll(String)}, the first pages of {@link #batchSize} series are requested at
+     * once. Series, which couldn't be polled, are logged and missing in the result. If the thread is interrupted, the
+     * poll stops after the current batch.
+     *
+     * @return map of the series ids to their new episodes, newest first
+     */
+    public Map<String, List<IVideoPage>> poll(Collection<String> seriesIds) {
+        Map<String, List<IVideoPage>> result = new LinkedHashMap<String, List<IVideoPage>>();
+        List<String> ids = new ArrayList<String>(seriesIds);
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            if (Thread.currentThread().isInterrupted()) {
+                logger.log(LogService.LOG_DEBUG, "Poll of the episode feed interrupted");
+                break;
+            }
+            List<String> batch = ids.subList(i, Math.min(ids.size(), i + batchSize));
+            Map<String, ResultPage> pages;
+            try {
+                pages = parser.fetchProgramPages(batch, pageSize);
+            } catch (IOException e) {
+                logger.log(LogService.LOG_WARNING, "Couldn't poll the episodes of " + batch, e);
+                continue;
+            }
+            for (String seriesId : batch) {
+                ResultPage page = pages.get(seriesId);
+                if (page == null) {
+                    logger.log(LogService.LOG_DEBUG, "Series " + seriesId + " not found");
+                    continue;
+                }
+                try {
+                    result.put(seriesId, update(seriesId, page));
+                } catch (IOException e) {
+                    logger.log(LogService.LOG_WARNING, "Couldn't poll the episodes of series " + seriesId, e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Subscribes a series and sets its watermark to the latest episode, if it isn't subscribed yet. The watermarks are
+     * saved afterwards.
+     */
+    public void subscribe(String seriesId) throws IOException {
+        if (!isSubscribed(seriesId)) {
+            poll(seriesId);
+        }
+    }
+
+    public synchronized Set<String> getSubscriptions() {
+        return new TreeSet<String>(watermarks.keySet());
+    }
+
+    public synchronized boolean isSubscribed(String seriesId) {
+        return watermarks.containsKey(seriesId);
+    }
+
+    /**
+     * Removes the watermark of a series and saves the watermarks
+     */
+    public void unsubscribe(String seriesId) {
+        boolean removed;
+        synchronized (this) {
+            removed = watermarks.remove(seriesId) != null;
+        }
+        if (removed) {
+            save();
+        }
+    }
+
+    /**
+     * Collects the new episodes starting with the given first page and moves the watermark. Further pages are loaded
+     * without holding the lock.
+     */
+    private List<IVideoPage> update(String seriesId, ResultPage page) throws IOException {
+        List<String> known = getWatermark(seriesId);
+        List<IVideoPage> newEpisodes = new ArrayList<IVideoPage>();
+        if (known == null) {
+            // first poll, only set the watermark
+            moveWatermark(seriesId, getEpisodes(page), null);
+            return newEpisodes;
+        }
+
+        Set<String> knownIds = new HashSet<String>(known);
+        int pages = 1;
+        while (true) {
+            boolean foundKnown = false;
+            for (IVideoPage episode : getEpisodes(page)) {
+                if (knownIds.contains(getId(episode))) {
+                    foundKnown = true;
+                } else {
+                    newEpisodes.add(episode);
+                }
+            }
+            if (foundKnown) {
+                moveWatermark(seriesId, newEpisodes, known);
+                return newEpisodes;
+            }
+            if (!page.hasNextPage() || pages >= maxPages) {
+                break;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Poll of series " + seriesId + " interrupted");
+            }
+            page = parser.fetchProgramPage(seriesId, pageSize, page.getEndCursor());
+            pages++;
+        }
+        if (!known.isEmpty()) {
+            logger.log(LogService.LOG_INFO, "No known episode of series " + seriesId + " within the latest "
+                    + newEpisodes.size() + " episodes");
+        }
+        moveWatermark(seriesId, newEpisodes, known);
+        return newEpisodes;
+    }
+
+    private synchronized List<String> getWatermark(String seriesId) {
+        return watermarks.get(seriesId);
+    }
+
+    /**
+     * Puts the new episodes in front of the current watermark
+     *
+     * @param known
+     *            the watermark at the start of the poll or <code>null</code>, if the poll subscribes the series
+     */
+    private synchronized void moveWatermark(String seriesId, List<IVideoPage> newEpisodes, List<String> known) {
+        List<String> current = watermarks.get(seriesId);
+        if (current == null && known != null) {
+            // unsubscribed during the poll
+            return;
+        }
+        Set<String> ids = new LinkedHashSet<String>();
+        for (IVideoPage episode : newEpisodes) {
+            ids.add(getId(episode));
+        }
+        if (current != null) {
+            ids.addAll(current);
+        }
+        List<String> watermark = new ArrayList<String>(ids);
+        if (watermark.size() > WATERMARK_SIZE) {
+            watermark.subList(WATERMARK_SIZE, watermark.size()).clear();
+        }
+        watermarks.put(seriesId, watermark);
+    }
+
+    private List<IVideoPage> getEpisodes(ResultPage page) {
+        List<IVideoPage> episodes = new ArrayList<IVideoPage>();
+        for (IWebPage p : page.getPages()) {
+            if (p instanceof IVideoPage) {
+                episodes.add((IVideoPage) p);
+            }
+        }
+        return episodes;
+    }
+
+    private String getId(IWebPage page) {
+        return page.getUri().getPath().substring(1);
+    }
+
+    /**
+     * Loads the watermarks from the file
+     */
+    synchronized void load() throws IOException {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        watermarks.clear();
+        for (String seriesId : new TreeSet<String>(props.stringPropertyNames())) {
+            String value = props.getProperty(seriesId).trim();
+            List<String> ids = new ArrayList<String>();
+            if (value.length() > 0) {
+                Collections.addAll(ids, value.split(","));
+            }
+            watermarks.put(seriesId, ids);
+        }
+    }
+
+    /**
+     * Saves the watermarks to the file, if there is one
+     */
+    public void save() {
+        if (file == null) {
+            return;
+        }
+        Properties props = new Properties();
+        synchronized (this) {
+            for (Entry<String, List<String>> entry : watermarks.entrySet()) {
+                StringBuilder sb = new StringBuilder();
+                for (String id : entry.getValue()) {
+                    sb.append(sb.length() > 0 ? "," : "").append(id);
+                }
+                props.setProperty(entry.getKey(), sb.toString());
+            }
+        }
+        synchronized (fileLock) {
+            write(props);
+        }
+    }
+
+    private void write(Properties props) {
+        try {
+            File tmp = new File(file.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out, "Watermarks of the BR Mediathek episode feed");
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Couldn't rename " + tmp + " to " + file);
+            }
+        } catch (IOException e) {
+            logger.log(LogService.LOG_WARNING, "Couldn't save the watermarks of the episode feed to " + file, e);
+        }
+    }
+}
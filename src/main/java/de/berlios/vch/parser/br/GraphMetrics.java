@@ -0,0 +1,60 @@
+package de.berlios.vch.parser.br;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Provides;
+
+@Component
+@Provides
+public class GraphMetrics implements IGraphMetrics {
+
+    private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentSkipListMap<String, OperationMetrics>();
+
+    private final ConcurrentMap<String, ICacheStatistics> caches = new ConcurrentSkipListMap<String, ICacheStatistics>();
+
+    @Override
+    public Collection<OperationMetrics> getOperations() {
+        return new ArrayList<OperationMetrics>(operations.values());
+    }
+
+    @Override
+    public OperationMetrics getOperation(String operation) {
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = new OperationMetrics(operation);
+            OperationMetrics existing = operations.putIfAbsent(operation, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public void addCache(String name, ICacheStatistics cache) {
+        caches.put(name, cache);
+    }
+
+    @Override
+    public void removeCache(String name) {
+        caches.remove(name);
+    }
+
+    @Override
+    public Map<String, ICacheStatistics> getCaches() {
+        return Collections.unmodifiableMap(caches);
+    }
+
+    @Override
+    public void reset() {
+        for (OperationMetrics metrics : operations.values()) {
+            metrics.reset();
+        }
+    }
+}
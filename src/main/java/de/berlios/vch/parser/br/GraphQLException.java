@@ -0,0 +1,32 @@
+package de.berlios.vch.parser.br;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Thrown, if the GraphQL endpoint answers a request with errors instead of data
+ */
+public class GraphQLException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> errors;
+
+    public GraphQLException(List<String> errors) {
+        super("GraphQL response doesn't contain any data. Errors: " + errors);
+        this.errors = errors;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public boolean hasError(String message) {
+        for (String error : errors) {
+            if (error != null && error.contains(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
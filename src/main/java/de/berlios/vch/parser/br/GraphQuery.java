@@ -0,0 +1,284 @@
+package de.berlios.vch.parser.br;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+/**
+ * A GraphQL operation, which only selects the fields the parser maps to pages. The request body is assembled from a
+ * pre-serialized template and the variables, so that no JSON tree has to be built for a request. Besides the query
+ * text, each operation knows its automatic persisted query hash, so that the query text can be omitted, if the
+ * endpoint knows the query already.
+ */
+class GraphQuery {
+
+    public static final String PUBLISHED = "av:http://ard.de/ontologies/lifeCycle#published";
+
+    public static final GraphQuery SERIES_INDEX = new GraphQuery("SeriesIndex",
+            "query SeriesIndex($seriesFilter: SeriesFilter!, $first: Int, $after: String) {"
+            + " viewer {"
+            + " seriesIndexAllSeries: allSeries(first: $first, after: $after, orderBy: TITLE_ASC, filter: $seriesFilter) {"
+            + " pageInfo { hasNextPage endCursor }"
+            + " edges { node { id title } }"
+            + " } } }");
+
+    /** selection of an episodes connection, newest versions first */
+    private static final String EPISODES_SELECTION = " pageInfo { hasNextPage endCursor }"
+            + " edges { node {"
+            + " id"
+            + " ... on ClipInterface { title duration }"
+            + " ... on ProgrammeInterface { broadcasts(first: 1, orderBy: START_DESC) { edges { node { start } } } }"
+            + " ... on CreativeWorkInterface { defaultTeaserImage { imageFiles(first: 1) { edges { node { publicLocation } } } } }"
+            + " } }";
+
+    public static final GraphQuery SERIES_EPISODES = new GraphQuery("SeriesEpisodes",
+            "query SeriesEpisodes($id: ID!, $clipCount: Int, $after: String, $previousEpisodesFilter: ProgrammeFilter) {"
+            + " viewer {"
+            + " series(id: $id) {"
+            + " previousEpisodes: episodes(first: $clipCount, after: $after, orderBy: VERSIONFROM_DESC, filter: $previousEpisodesFilter) {"
+            + EPISODES_SELECTION
+            + " } } } }");
+
+    private static final String CLIP_FRAGMENT = "fragment ClipDetails_clip on ClipInterface {"
+            + " shortDescription"
+            + " videoFiles(first: 100) { edges { node { publicLocation mimetype videoProfile { width height } } } }"
+            + " }";
+
+    public static final GraphQuery CLIP_DETAILS = new GraphQuery("ClipDetails",
+            "query ClipDetails($clipId: ID!) {"
+            + " viewer { clip(id: $clipId) { ...ClipDetails_clip } }"
+            + " } "
+            + CLIP_FRAGMENT);
+
+    private static final Map<Integer, GraphQuery> clipBatches = new ConcurrentHashMap<Integer, GraphQuery>();
+
+    /**
+     * Returns an operation, which selects the details of <code>size</code> clips at once. The clips are selected with the
+     * aliases <code>c0</code> to <code>c{size-1}</code> and the ids are passed in the variables of the same names.
+     */
+    public static GraphQuery clipBatch(int size) {
+        GraphQuery query = clipBatches.get(size);
+        if (query == null) {
+            StringBuilder params = new StringBuilder();
+            StringBuilder selections = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                params.append(i > 0 ? ", " : "").append("$c").append(i).append(": ID!");
+                selections.append(" c").append(i).append(": clip(id: $c").append(i).append(") { ...ClipDetails_clip }");
+            }
+            String operationName = "ClipBatch" + size;
+            query = new GraphQuery(operationName, "query " + operationName + "(" + params + ") {"
+                    + " viewer {" + selections + " }"
+                    + " } "
+                    + CLIP_FRAGMENT);
+            clipBatches.put(size, query);
+        }
+        return query;
+    }
+
+    private static final Map<Integer, GraphQuery> seriesBatches = new ConcurrentHashMap<Integer, GraphQuery>();
+
+    /**
+     * Returns an operation, which selects the first episodes of <code>size</code> series at once. The series are selected
+     * with the aliases <code>s0</code> to <code>s{size-1}</code> and the ids are passed in the variables of the same
+     * names. Like {@link #SERIES_EPISODES}, the episodes are ordered by version, newest first.
+     */
+    public static GraphQuery seriesEpisodesBatch(int size) {
+        GraphQuery query = seriesBatches.get(size);
+        if (query == null) {
+            StringBuilder params = new StringBuilder();
+            StringBuilder selections = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                params.append("$s").append(i).append(": ID!, ");
+                selections.append(" s").append(i).append(": series(id: $s").append(i).append(") {"
+                        + " previousEpisodes: episodes(first: $clipCount, orderBy: VERSIONFROM_DESC, filter: $previousEpisodesFilter) {")
+                        .append(EPISODES_SELECTION).append(" } }");
+            }
+            String operationName = "SeriesEpisodesBatch" + size;
+            query = new GraphQuery(operationName, "query " + operationName + "(" + params
+                    + "$clipCount: Int, $previousEpisodesFilter: ProgrammeFilter) {"
+                    + " viewer {" + selections + " }"
+                    + " }");
+            seriesBatches.put(size, query);
+        }
+        return query;
+    }
+
+    private final String operationName;
+
+    private final String query;
+
+    private final String hash;
+
+    /** request body prefix with query text and persisted query hash */
+    private final String requestPrefix;
+
+    /** request body prefix with the query text only */
+    private final String plainRequestPrefix;
+
+    /** request body prefix with the persisted query hash only */
+    private final String persistedRequestPrefix;
+
+    GraphQuery(String operationName, String query) {
+        this.operationName = operationName;
+        this.query = query;
+        this.hash = sha256(query);
+
+        String name = "{\"operationName\":" + JSONObject.quote(operationName);
+        String queryText = ",\"query\":" + JSONObject.quote(query);
+        String extensions = ",\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\"" + hash + "\"}}";
+        this.requestPrefix = name + queryText + extensions + ",\"variables\":";
+        this.plainRequestPrefix = name + queryText + ",\"variables\":";
+        this.persistedRequestPrefix = name + extensions + ",\"variables\":";
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return the hex encoded SHA-256 hash of the query text, which identifies the query as automatic persisted query
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Creates a request body, which contains the query text
+     *
+     * @param variables
+     *            the variables as serialized JSON object
+     * @param persisted
+     *            whether to add the persisted query hash, so that the endpoint registers the query
+     */
+    public byte[] createRequest(String variables, boolean persisted) {
+        return toBytes((persisted ? requestPrefix : plainRequestPrefix) + variables + "}");
+    }
+
+    /**
+     * Creates a request body, which only contains the persisted query hash instead of the query text
+     *
+     * @param variables
+     *            the variables as serialized JSON object
+     */
+    public byte[] createPersistedRequest(String variables) {
+        return toBytes(persistedRequestPrefix + variables + "}");
+    }
+
+    /** filter of the episodes, which can be played */
+    private static final String EPISODES_FILTER = "{"
+            + "\"essences\":{\"empty\":{\"eq\":false}},"
+            + "\"status\":{\"id\":{\"eq\":" + string(PUBLISHED) + "}}"
+            + "}";
+
+    /**
+     * Creates the variables of {@link #SERIES_INDEX}
+     *
+     * @param predicate
+     *            the predicate of the title filter, e.g. <code>startsWith</code>
+     * @param after
+     *            the cursor of the page or <code>null</code> for the first page
+     */
+    static String seriesIndexVariables(String predicate, String value, int first, String after) {
+        return "{\"seriesFilter\":{"
+                + "\"audioOnly\":{\"eq\":false},"
+                + "\"title\":{" + string(predicate) + ":" + string(value) + "},"
+                + "\"status\":{\"id\":{\"eq\":" + string(PUBLISHED) + "}}"
+                + "},"
+                + "\"first\":" + first + ","
+                + "\"after\":" + cursor(after)
+                + "}";
+    }
+
+    /**
+     * Creates the variables of {@link #SERIES_EPISODES}
+     *
+     * @param after
+     *            the cursor of the page or <code>null</code> for the first page
+     */
+    static String seriesEpisodesVariables(String id, int first, String after) {
+        return "{\"id\":" + string(id) + ","
+                + "\"clipCount\":" + first + ","
+                + "\"after\":" + cursor(after) + ","
+                + "\"previousEpisodesFilter\":" + EPISODES_FILTER
+                + "}";
+    }
+
+    /**
+     * Creates the variables of {@link #seriesEpisodesBatch(int)} for the given series ids
+     */
+    static String seriesEpisodesBatchVariables(List<String> ids, int first) {
+        StringBuilder variables = new StringBuilder("{");
+        for (int i = 0; i < ids.size(); i++) {
+            variables.append("\"s").append(i).append("\":").append(string(ids.get(i))).append(",");
+        }
+        variables.append("\"clipCount\":").append(first).append(",");
+        variables.append("\"previousEpisodesFilter\":").append(EPISODES_FILTER).append("}");
+        return variables.toString();
+    }
+
+    /**
+     * Creates the variables of {@link #CLIP_DETAILS}
+     */
+    static String clipDetailsVariables(String id) {
+        return "{\"clipId\":" + string(id) + "}";
+    }
+
+    /**
+     * Creates the variables of {@link #clipBatch(int)} for the given clip ids
+     */
+    static String clipBatchVariables(List<String> ids) {
+        StringBuilder variables = new StringBuilder("{");
+        for (int i = 0; i < ids.size(); i++) {
+            variables.append(i > 0 ? "," : "").append("\"c").append(i).append("\":").append(string(ids.get(i)));
+        }
+        return variables.append('}').toString();
+    }
+
+    private static String cursor(String after) {
+        return after != null ? string(after) : "null";
+    }
+
+    /**
+     * Serializes a string as JSON string literal
+     */
+    public static String string(String value) {
+        return JSONObject.quote(value);
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes(BrMediathekParser.CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha256(String s) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(toBytes(s));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return operationName;
+    }
+}
@@ -0,0 +1,514 @@
+package de.berlios.vch.parser.br;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.service.log.LogService;
+
+import de.berlios.vch.parser.IWebPage;
+import de.berlios.vch.parser.OverviewPage;
+import de.berlios.vch.parser.VideoPage;
+
+/**
+ * Maps the responses of the GraphQL endpoint to pages. The responses are read with a {@link JsonReader}, so that the
+ * pages are created while the response is received and all fields, which are not needed, are skipped.
+ */
+class GraphResponseDecoder {
+
+    private final String parserId;
+
+    private final LogService logger;
+
+    GraphResponseDecoder(String parserId, LogService logger) {
+        this.parserId = parserId;
+        this.logger = logger;
+    }
+
+    /**
+     * Reads the series of the A-Z list from <code>data.viewer.seriesIndexAllSeries.edges[].node</code>
+     */
+    public ResultPage decodeSeries(Reader in) throws IOException {
+        final ResultPage programs = new ResultPage();
+        readResponse(in, new ViewerReader() {
+            @Override
+            public void readField(JsonReader reader, String field) throws IOException {
+                if ("seriesIndexAllSeries".equals(field)) {
+                    readEdges(reader, new NodeReader() {
+                        @Override
+                        public void readNode(JsonReader reader) throws IOException {
+                            programs.getPages().add(readSeries(reader));
+                        }
+                    }, programs);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        });
+        return programs;
+    }
+
+    /**
+     * Reads the episodes of a series from <code>data.viewer.series.previousEpisodes.edges[].node</code>
+     */
+    public ResultPage decodeEpisodes(Reader in) throws IOException {
+        final ResultPage episodes = new ResultPage();
+        readResponse(in, new ViewerReader() {
+            @Override
+            public void readField(JsonReader reader, String field) throws IOException {
+                if ("series".equals(field) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    readSeriesEpisodes(reader, episodes);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        });
+        return episodes;
+    }
+
+    /**
+     * Reads the episodes of a {@link GraphQuery#seriesEpisodesBatch(int)} request. Series, which couldn't be resolved,
+     * are missing in the returned map.
+     *
+     * @return map of the aliases to the episodes of the series
+     */
+    public Map<String, ResultPage> decodeEpisodeBatch(Reader in) throws IOException {
+        final Map<String, ResultPage> series = new HashMap<String, ResultPage>();
+        readResponse(in, new ViewerReader() {
+            @Override
+            public void readField(JsonReader reader, String field) throws IOException {
+                if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    ResultPage episodes = new ResultPage();
+                    readSeriesEpisodes(reader, episodes);
+                    series.put(field, episodes);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        });
+        return series;
+    }
+
+    /**
+     * Reads the episodes from <code>series.previousEpisodes.edges[].node</code>
+     */
+    private void readSeriesEpisodes(JsonReader reader, final ResultPage episodes) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("previousEpisodes".equals(reader.nextName())) {
+                readEdges(reader, new NodeReader() {
+                    @Override
+                    public void readNode(JsonReader reader) throws IOException {
+                        episodes.getPages().add(readEpisode(reader));
+                    }
+                }, episodes);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads the description and the video files from <code>data.viewer.clip</code>
+     *
+     * @throws IOException
+     *             if the response doesn't contain the clip, so that a missing clip isn't cached as clip without videos
+     */
+    public ClipDetails decodeClip(Reader in) throws IOException {
+        final ClipDetails[] clip = new ClipDetails[1];
+        readResponse(in, new ViewerReader() {
+            @Override
+            public void readField(JsonReader reader, String field) throws IOException {
+                if ("clip".equals(field) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    clip[0] = readClip(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        });
+        if (clip[0] == null) {
+            throw new IOException("Response doesn't contain the clip");
+        }
+        return clip[0];
+    }
+
+    /**
+     * Reads the clips of a {@link GraphQuery#clipBatch(int)} request. Clips, which couldn't be resolved, are missing in
+     * the returned map.
+     *
+     * @return map of the aliases to the clip details
+     */
+    public Map<String, ClipDetails> decodeClips(Reader in) throws IOException {
+        final Map<String, ClipDetails> clips = new HashMap<String, ClipDetails>();
+        readResponse(in, new ViewerReader() {
+            @Override
+            public void readField(JsonReader reader, String field) throws IOException {
+                if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    clips.put(field, readClip(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+        });
+        return clips;
+    }
+
+    private ClipDetails readClip(JsonReader reader) throws IOException {
+        String description = null;
+        List<Rendition> renditions = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("shortDescription".equals(name)) {
+                description = reader.nextStringOrNull();
+            } else if ("videoFiles".equals(name)) {
+                renditions = parseRenditions(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new ClipDetails(description, renditions);
+    }
+
+    private OverviewPage readSeries(JsonReader reader) throws IOException {
+        String id = null;
+        String title = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name)) {
+                id = reader.nextStringOrNull();
+            } else if ("title".equals(name)) {
+                title = reader.nextStringOrNull();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        OverviewPage progPage = new OverviewPage();
+        progPage.setParser(parserId);
+        progPage.setTitle(title);
+        progPage.setUri(createUri("br://program/" + id));
+        return progPage;
+    }
+
+    private VideoPage readEpisode(JsonReader reader) throws IOException {
+        String id = null;
+        String title = null;
+        long duration = 0;
+        String start = null;
+        String thumbnail = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name)) {
+                id = reader.nextStringOrNull();
+            } else if ("title".equals(name)) {
+                title = reader.nextStringOrNull();
+            } else if ("duration".equals(name) && reader.peek() == JsonReader.Token.NUMBER) {
+                duration = reader.nextLong();
+            } else if ("broadcasts".equals(name)) {
+                start = readFirstNodeField(reader, "start");
+            } else if ("defaultTeaserImage".equals(name) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("imageFiles".equals(reader.nextName())) {
+                        thumbnail = readFirstNodeField(reader, "publicLocation");
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        VideoPage video = new VideoPage();
+        video.setParser(parserId);
+        video.setTitle(title);
+        video.setDuration(duration);
+        video.setPublishDate(parsePubDate(start));
+        video.setThumbnail(parseThumbnail(thumbnail));
+        video.setUri(createUri("br://video/" + id));
+        video.setVideoUri(createUri("https://www.hampelratte.org"));
+        return video;
+    }
+
+    URI parseThumbnail(String publicLocation) {
+        try {
+            if (publicLocation == null) {
+                throw new IllegalArgumentException("Teaser image has no public location");
+            }
+            return new URI(publicLocation);
+        } catch (Exception e) {
+            logger.log(LogService.LOG_WARNING, "Couldn't parse thumbnail", e);
+            return null;
+        }
+    }
+
+    Calendar parsePubDate(String start) {
+        Calendar pubDate = Calendar.getInstance();
+        try {
+            // 2018-04-22T23:30:00.000Z
+            if (start == null) {
+                throw new IllegalArgumentException("Episode has no broadcast");
+            }
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            Date broadcastDate = sdf.parse(start);
+            pubDate.setTimeInMillis(broadcastDate.getTime());
+        } catch (Exception e) {
+            logger.log(LogService.LOG_WARNING, "Couldn't parse publish date", e);
+            pubDate.setTimeInMillis(0);
+        }
+        return pubDate;
+    }
+
+    /**
+     * Reads a videoFiles connection and returns all files, which have a location, ordered by height, greatest first
+     */
+    List<Rendition> parseRenditions(JsonReader reader) throws IOException {
+        final List<Rendition> renditions = new ArrayList<Rendition>();
+        readEdges(reader, new NodeReader() {
+            @Override
+            public void readNode(JsonReader reader) throws IOException {
+                String publicLocation = null;
+                String mimetype = null;
+                int width = 0;
+                int height = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("publicLocation".equals(name)) {
+                        publicLocation = reader.nextStringOrNull();
+                    } else if ("mimetype".equals(name)) {
+                        mimetype = reader.nextStringOrNull();
+                    } else if ("videoProfile".equals(name) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String field = reader.nextName();
+                            if ("width".equals(field)) {
+                                width = readDimension(reader);
+                            } else if ("height".equals(field)) {
+                                height = readDimension(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (publicLocation != null) {
+                    renditions.add(new Rendition(createUri(publicLocation), width, height, mimetype));
+                }
+            }
+        });
+        Collections.sort(renditions, new Comparator<Rendition>() {
+            @Override
+            public int compare(Rendition a, Rendition b) {
+                return a.getHeight() > b.getHeight() ? -1 : (a.getHeight() == b.getHeight() ? 0 : 1);
+            }
+        });
+        return renditions;
+    }
+
+    /**
+     * Reads a width or height, which is reported as number, as string like <code>"720"</code> or <code>"720p"</code>
+     * or not at all
+     *
+     * @return the dimension or 0, if it is unknown
+     */
+    private int readDimension(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NUMBER) {
+            return (int) reader.nextLong();
+        } else if (reader.peek() == JsonReader.Token.STRING) {
+            String value = reader.nextString().trim();
+            int end = 0;
+            while (end < value.length() && Character.isDigit(value.charAt(end))) {
+                end++;
+            }
+            if (end > 0 && end < 10) {
+                return Integer.parseInt(value.substring(0, end));
+            }
+            logger.log(LogService.LOG_DEBUG, "Couldn't parse video dimension \"" + value + "\"");
+            return 0;
+        }
+        reader.skipValue();
+        return 0;
+    }
+
+    /**
+     * Reads the response envelope and hands each field of <code>data.viewer</code> to the given reader
+     *
+     * @throws IOException
+     *             if the response doesn't contain any data
+     */
+    private void readResponse(Reader in, ViewerReader viewerReader) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            List<String> errors = new ArrayList<String>();
+            boolean hasViewer = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("data".equals(name) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("viewer".equals(reader.nextName()) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                            hasViewer = true;
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                viewerReader.readField(reader, reader.nextName());
+                            }
+                            reader.endObject();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else if ("errors".equals(name) && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        errors.add(readFirstField(reader, "message"));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!hasViewer) {
+                throw new GraphQLException(errors);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readEdges(JsonReader reader, NodeReader nodeReader) throws IOException {
+        readEdges(reader, nodeReader, null);
+    }
+
+    /**
+     * Calls the node reader for each <code>edges[].node</code> of a connection and stores the <code>pageInfo</code> of
+     * the connection in the given result page, if it is not <code>null</code>
+     */
+    private void readEdges(JsonReader reader, NodeReader nodeReader, ResultPage result) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("edges".equals(name) && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("node".equals(reader.nextName()) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                            nodeReader.readNode(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else if ("pageInfo".equals(name) && result != null && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String info = reader.nextName();
+                    if ("hasNextPage".equals(info) && reader.peek() == JsonReader.Token.BOOLEAN) {
+                        result.setHasNextPage(reader.nextBoolean());
+                    } else if ("endCursor".equals(info)) {
+                        result.setEndCursor(reader.nextStringOrNull());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Returns a field of the first <code>edges[].node</code> of a connection
+     */
+    private String readFirstNodeField(JsonReader reader, final String field) throws IOException {
+        final String[] value = new String[1];
+        readEdges(reader, new NodeReader() {
+            @Override
+            public void readNode(JsonReader reader) throws IOException {
+                String v = readFirstField(reader, field);
+                if (value[0] == null) {
+                    value[0] = v;
+                }
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * Returns a scalar field of the next object and skips the rest of the object
+     */
+    private String readFirstField(JsonReader reader, String field) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (field.equals(reader.nextName()) && value == null) {
+                value = reader.nextStringOrNull();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    private URI createUri(String uri) throws IOException {
+        try {
+            return new URI(uri);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URI " + uri + ": " + e.getMessage());
+        }
+    }
+
+    private interface ViewerReader {
+        void readField(JsonReader reader, String field) throws IOException;
+    }
+
+    private interface NodeReader {
+        void readNode(JsonReader reader) throws IOException;
+    }
+}
@@ -0,0 +1,255 @@
+package de.berlios.vch.parser.br;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import de.berlios.vch.http.client.HttpUtils;
+
+/**
+ * HTTP transport for the GraphQL endpoint. The request header is created once, responses are requested compressed and
+ * the connections are kept alive and reused by the keep-alive cache of {@link HttpURLConnection}. To make reuse
+ * possible, the rest of a response is drained, when the response reader is closed.
+ */
+class GraphTransport {
+
+    /** maximum number of bytes, which are drained from a response, so that the connection can be reused */
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    private final URL endpoint;
+
+    private final int connectTimeout;
+
+    private final int readTimeout;
+
+    private final Map<String, String> header;
+
+    /**
+     * @param connectTimeout
+     *            connect timeout in milliseconds
+     * @param readTimeout
+     *            read timeout in milliseconds
+     */
+    GraphTransport(String endpoint, int connectTimeout, int readTimeout) throws IOException {
+        this.endpoint = new URL(endpoint);
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+
+        Map<String, String> header = HttpUtils.createFirefoxHeader();
+        header.put("Referer", "https://www.br.de/mediathek/sendungen_a-z");
+        header.put("origin", "https://www.br.de");
+        header.put("DNT", "1");
+        header.put("content-type", "application/json");
+        header.put("Accept", "application/json");
+        header.put("Accept-Encoding", "gzip, deflate");
+        header.put("Connection", "keep-alive");
+        this.header = Collections.unmodifiableMap(header);
+    }
+
+    /**
+     * Sends a request to the GraphQL endpoint and returns a reader for the decompressed response body, so that the
+     * response can be decoded while it is received. The caller has to close the reader.
+     */
+    public Reader post(byte[] request) throws IOException {
+        return post(request, null);
+    }
+
+    /**
+     * Sends a request like {@link #post(byte[])} and records the timing and the size of the response in the given
+     * exchange, which may be <code>null</code>
+     */
+    public Reader post(byte[] request, Exchange exchange) throws IOException {
+        if (exchange != null) {
+            exchange.start = System.nanoTime();
+        }
+        HttpURLConnection con = (HttpURLConnection) endpoint.openConnection();
+        con.setRequestMethod("POST");
+        con.setDoOutput(true);
+        con.setUseCaches(false);
+        con.setConnectTimeout(connectTimeout);
+        con.setReadTimeout(readTimeout);
+        for (Entry<String, String> entry : header.entrySet()) {
+            con.setRequestProperty(entry.getKey(), entry.getValue());
+        }
+        con.setFixedLengthStreamingMode(request.length);
+        OutputStream out = con.getOutputStream();
+        try {
+            out.write(request);
+        } finally {
+            out.close();
+        }
+
+        int status = con.getResponseCode();
+        if (exchange != null) {
+            exchange.firstByte = System.nanoTime();
+        }
+        InputStream in;
+        if (status == HttpURLConnection.HTTP_BAD_REQUEST && con.getErrorStream() != null) {
+            // GraphQL errors are reported with status 400 by some servers, let the decoder read the errors
+            in = con.getErrorStream();
+        } else if (status >= 400) {
+            InputStream err = con.getErrorStream();
+            if (err != null) {
+                new DrainingInputStream(err).close();
+            }
+            throw new HttpStatusException(status);
+        } else {
+            in = con.getInputStream();
+        }
+        if (exchange != null) {
+            in = new MeasuringInputStream(in, exchange);
+        }
+        return new InputStreamReader(decompress(new DrainingInputStream(in), con.getContentEncoding()),
+                BrMediathekParser.CHARSET);
+    }
+
+    private InputStream decompress(InputStream in, String encoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(in, 8192);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            return new InflaterInputStream(in, new Inflater(), 8192);
+        }
+        return in;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint.toString();
+    }
+
+    /**
+     * Signals, that the endpoint answered a request with an HTTP error status
+     */
+    static class HttpStatusException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpStatusException(int status) {
+            super("GraphQL request failed with HTTP status " + status);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Timing and size of one request. The times are values of {@link System#nanoTime()}.
+     */
+    static class Exchange {
+
+        private long start;
+
+        private long firstByte;
+
+        private long bytes;
+
+        private long readTime;
+
+        /** @return the time in nanoseconds from sending the request until the response header has been received */
+        long getTimeToFirstByte() {
+            return firstByte - start;
+        }
+
+        /** @return the number of bytes of the response body, which have been received */
+        long getBytes() {
+            return bytes;
+        }
+
+        /** @return the time in nanoseconds spent waiting for the response body */
+        long getReadTime() {
+            return readTime;
+        }
+
+        long getStart() {
+            return start;
+        }
+
+        long getFirstByte() {
+            return firstByte;
+        }
+    }
+
+    /**
+     * Counts the bytes of the response body and the time spent waiting for them
+     */
+    private static class MeasuringInputStream extends FilterInputStream {
+
+        private final Exchange exchange;
+
+        private MeasuringInputStream(InputStream in, Exchange exchange) {
+            super(in);
+            this.exchange = exchange;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = in.read();
+            exchange.readTime += System.nanoTime() - start;
+            if (b >= 0) {
+                exchange.bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int read = in.read(b, off, len);
+            exchange.readTime += System.nanoTime() - start;
+            if (read > 0) {
+                exchange.bytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            exchange.bytes += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Reads the rest of the response, when the stream is closed. {@link HttpURLConnection} only puts a connection back
+     * into the keep-alive cache, if the response has been read completely.
+     */
+    private static class DrainingInputStream extends FilterInputStream {
+
+        private DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                byte[] buffer = new byte[4096];
+                int drained = 0;
+                int read;
+                while (drained < MAX_DRAIN && (read = in.read(buffer)) >= 0) {
+                    drained += read;
+                }
+            } catch (IOException e) {
+                // ignore, the connection just won't be reused
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package de.berlios.vch.parser.br;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Service of the BR Mediathek parser for other bundles, which goes beyond browsing the pages of
+ * {@link de.berlios.vch.parser.IWebParser}
+ */
+public interface IBrMediathekParser {
+
+    /**
+     * @return the local index of all series and episodes or <code>null</code>, if the index is disabled. The index is
+     *         updated the first time it is requested.
+     */
+    public CatalogIndex getCatalogIndex();
+
+    /**
+     * @return the feed of new episodes of the subscribed series
+     */
+    public EpisodeFeed getEpisodeFeed();
+
+    /**
+     * @return the names of the configured rendition profiles
+     */
+    public Set<String> getRenditionProfiles();
+
+    /**
+     * @return all renditions of a clip, greatest height first
+     */
+    public List<Rendition> getRenditions(String clipId) throws IOException;
+
+    /**
+     * Selects the rendition of a clip for the given profile
+     *
+     * @param profile
+     *            the name of the profile or <code>null</code> for the default profile
+     * @return the selected rendition or <code>null</code>, if the clip has no video files
+     * @throws IllegalArgumentException
+     *             if the profile is unknown
+     */
+    public Rendition selectRendition(String clipId, String profile) throws IOException;
+}
@@ -0,0 +1,25 @@
+package de.berlios.vch.parser.br;
+
+/**
+ * Counters of a response cache of the BR Mediathek parser
+ */
+public interface ICacheStatistics {
+
+    /** @return the number of entries in the cache */
+    public int getSize();
+
+    /** @return the maximum number of entries */
+    public int getMaxEntries();
+
+    /** @return the number of lookups, which have been answered from the cache */
+    public long getHits();
+
+    /** @return the number of lookups, which haven't found a valid entry */
+    public long getMisses();
+
+    /** @return the number of entries, which have been evicted, because the cache was full */
+    public long getEvictions();
+
+    /** @return the number of misses, which waited for a load of the same entry instead of sending a request */
+    public long getCoalesced();
+}
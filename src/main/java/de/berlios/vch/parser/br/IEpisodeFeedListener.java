@@ -0,0 +1,20 @@
+package de.berlios.vch.parser.br;
+
+import java.util.List;
+
+import de.berlios.vch.parser.IVideoPage;
+
+/**
+ * Service interface of the components, which want to be notified about new episodes of the series subscribed in the
+ * {@link EpisodeFeed}
+ */
+public interface IEpisodeFeedListener {
+
+    /**
+     * Called after a scheduled poll for each series, which has new episodes
+     *
+     * @param episodes
+     *            the new episodes, newest first
+     */
+    public void newEpisodes(String seriesId, List<IVideoPage> episodes);
+}
@@ -0,0 +1,37 @@
+package de.berlios.vch.parser.br;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Service, which collects the metrics of the GraphQL operations of the BR Mediathek parser
+ */
+public interface IGraphMetrics {
+
+    /**
+     * @return the metrics of all operations, which have been executed, ordered by the operation name
+     */
+    public Collection<OperationMetrics> getOperations();
+
+    /**
+     * @return the metrics of the given operation. They are created, if the operation hasn't been executed yet.
+     */
+    public OperationMetrics getOperation(String operation);
+
+    /**
+     * Publishes the counters of a cache under the given name
+     */
+    public void addCache(String name, ICacheStatistics cache);
+
+    public void removeCache(String name);
+
+    /**
+     * @return the counters of all published caches, ordered by name
+     */
+    public Map<String, ICacheStatistics> getCaches();
+
+    /**
+     * Resets the metrics of all operations. The cache counters belong to the caches and are not reset.
+     */
+    public void reset();
+}
@@ -0,0 +1,458 @@
+package de.berlios.vch.parser.br;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser for JSON documents. In contrast to {@link org.json.JSONObject} it reads the document
+ * incrementally from a {@link Reader} and doesn't build a tree, so that large responses can be mapped while they are
+ * received. Values, which are not of interest, can be skipped with {@link #skipValue()} without being materialized.
+ */
+class JsonReader implements Closeable {
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Reader in;
+
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+
+    /** number of characters read before the current buffer content */
+    private long offset = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 1;
+
+    private Token peeked;
+
+    JsonReader(Reader in) {
+        this.in = in;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int scope = stack[stackSize - 1];
+        if (scope == EMPTY_ARRAY) {
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == NONEMPTY_ARRAY) {
+            int c = nextNonWhitespace();
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            } else if (c != ',') {
+                throw syntaxError("Expected ',' or ']'");
+            }
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = DANGLING_NAME;
+            if (scope == NONEMPTY_OBJECT) {
+                int c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+            }
+            int c = nextNonWhitespace();
+            if (c == '}' && scope == EMPTY_OBJECT) {
+                return peeked = Token.END_OBJECT;
+            } else if (c == '"') {
+                return peeked = Token.NAME;
+            } else {
+                throw syntaxError("Expected name");
+            }
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace() != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        } else if (scope == NONEMPTY_DOCUMENT) {
+            if (skipWhitespace() == -1) {
+                return peeked = Token.END_DOCUMENT;
+            }
+            throw syntaxError("Expected end of document");
+        }
+
+        int c = nextNonWhitespace();
+        switch (c) {
+        case '{':
+            return peeked = Token.BEGIN_OBJECT;
+        case '[':
+            return peeked = Token.BEGIN_ARRAY;
+        case ']':
+            if (scope == EMPTY_ARRAY) {
+                return peeked = Token.END_ARRAY;
+            }
+            throw syntaxError("Unexpected ']'");
+        case '"':
+            return peeked = Token.STRING;
+        case 't':
+        case 'f':
+            pos--;
+            return peeked = Token.BOOLEAN;
+        case 'n':
+            pos--;
+            return peeked = Token.NULL;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                pos--;
+                return peeked = Token.NUMBER;
+            }
+            throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * @return the next string or the literal text of the next number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return readString();
+        } else if (token == Token.NUMBER) {
+            peeked = null;
+            return readLiteral();
+        }
+        throw syntaxError("Expected string but was " + token);
+    }
+
+    /**
+     * @return the next number or string as long value
+     */
+    public long nextLong() throws IOException {
+        String value = nextString();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException nfe) {
+                throw syntaxError("Expected number but was \"" + value + "\"");
+            }
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        String literal = readLiteral();
+        if ("true".equals(literal)) {
+            return true;
+        } else if ("false".equals(literal)) {
+            return false;
+        }
+        throw syntaxError("Expected boolean but was " + literal);
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        String literal = readLiteral();
+        if (!"null".equals(literal)) {
+            throw syntaxError("Expected null but was " + literal);
+        }
+    }
+
+    /**
+     * @return the next string, the literal text of a number or boolean or <code>null</code>. Objects and arrays are
+     *         skipped and <code>null</code> is returned.
+     */
+    public String nextStringOrNull() throws IOException {
+        switch (peek()) {
+        case STRING:
+        case NUMBER:
+            return nextString();
+        case BOOLEAN:
+            return Boolean.toString(nextBoolean());
+        default:
+            skipValue();
+            return null;
+        }
+    }
+
+    /**
+     * Skips the next value. Nested objects and arrays are skipped completely without creating any strings.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            peeked = null;
+            switch (token) {
+            case BEGIN_OBJECT:
+                push(EMPTY_OBJECT);
+                depth++;
+                break;
+            case BEGIN_ARRAY:
+                push(EMPTY_ARRAY);
+                depth++;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                stackSize--;
+                depth--;
+                break;
+            case NAME:
+            case STRING:
+                skipString();
+                break;
+            case NUMBER:
+            case BOOLEAN:
+            case NULL:
+                skipLiteral();
+                break;
+            case END_DOCUMENT:
+                throw syntaxError("Unexpected end of document");
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        stackSize = 0;
+        in.close();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private String readString() throws IOException {
+        StringBuilder sb = null;
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    if (sb == null) {
+                        return new String(buffer, start, pos - start - 1);
+                    }
+                    sb.append(buffer, start, pos - start - 1);
+                    return sb.toString();
+                } else if (c == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder();
+                    }
+                    sb.append(buffer, start, pos - start - 1);
+                    sb.append(readEscapeCharacter());
+                    start = pos;
+                }
+            }
+            if (sb == null) {
+                sb = new StringBuilder();
+            }
+            sb.append(buffer, start, pos - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return;
+                } else if (c == '\\') {
+                    readEscapeCharacter();
+                }
+            }
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscapeCharacter() throws IOException {
+        int c = nextChar();
+        switch (c) {
+        case 'u':
+            char result = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(nextChar(), 16);
+                if (digit < 0) {
+                    throw syntaxError("Invalid unicode escape sequence");
+                }
+                result = (char) ((result << 4) + digit);
+            }
+            return result;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case '"':
+        case '\\':
+        case '/':
+            return (char) c;
+        default:
+            throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                if (isLiteralEnd(buffer[pos])) {
+                    sb.append(buffer, start, pos - start);
+                    return sb.toString();
+                }
+                pos++;
+            }
+            sb.append(buffer, start, pos - start);
+            if (!fill()) {
+                return sb.toString();
+            }
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                if (isLiteralEnd(buffer[pos])) {
+                    return;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return;
+            }
+        }
+    }
+
+    private boolean isLiteralEnd(char c) {
+        switch (c) {
+        case ',':
+        case ':':
+        case '}':
+        case ']':
+        case ' ':
+        case '\t':
+        case '\r':
+        case '\n':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = skipWhitespace();
+        if (c == -1) {
+            throw syntaxError("Unexpected end of document");
+        }
+        pos++;
+        return c;
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it or -1 at the end of the input
+     */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                    return c;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    private int nextChar() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of document");
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) == 0) {
+            // keep on reading until we get data or EOF
+        }
+        if (read > 0) {
+            limit = read;
+            return true;
+        }
+        return false;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at position " + (offset + pos));
+    }
+}
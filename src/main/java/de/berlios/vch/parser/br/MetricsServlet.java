@@ -0,0 +1,220 @@
+package de.berlios.vch.parser.br;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Invalidate;
+import org.apache.felix.ipojo.annotations.Property;
+import org.apache.felix.ipojo.annotations.Requires;
+import org.apache.felix.ipojo.annotations.Validate;
+import org.json.JSONObject;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.http.HttpService;
+import org.osgi.service.http.NamespaceException;
+import org.osgi.service.log.LogService;
+
+import de.berlios.vch.web.menu.IWebMenuEntry;
+import de.berlios.vch.web.menu.WebMenuEntry;
+import de.berlios.vch.web.servlets.VchHttpServlet;
+
+/**
+ * Status page of the GraphQL metrics, which is linked in the menu of the web interface. The page is rendered as HTML
+ * table and as JSON with the parameter <code>format=json</code>. A POST with <code>action=reset</code> resets the
+ * metrics, if the property <code>reset.enabled</code> is set.
+ */
+@Component
+public class MetricsServlet extends VchHttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String PATH = "/parser/br/metrics";
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 100 };
+
+    @Requires
+    private LogService logger;
+
+    @Requires
+    private HttpService httpService;
+
+    @Requires
+    private IGraphMetrics metrics;
+
+    /** Allow to reset the metrics with a POST request. The page is not protected, so this is disabled by default. */
+    @Property(name = "reset.enabled", value = "false")
+    private boolean resetEnabled;
+
+    private final BundleContext ctx;
+
+    private ServiceRegistration menuReg;
+
+    public MetricsServlet(BundleContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Validate
+    public void start() {
+        try {
+            httpService.registerServlet(PATH, this, null, null);
+        } catch (ServletException e) {
+            logger.log(LogService.LOG_ERROR, "Couldn't register BR Mediathek metrics page", e);
+            return;
+        } catch (NamespaceException e) {
+            logger.log(LogService.LOG_ERROR, "Couldn't register BR Mediathek metrics page", e);
+            return;
+        }
+
+        IWebMenuEntry status = new WebMenuEntry("Status");
+        status.setPreferredPosition(Integer.MAX_VALUE - 2);
+        status.setLinkUri("#");
+        IWebMenuEntry entry = new WebMenuEntry("BR Mediathek");
+        entry.setLinkUri(PATH);
+        status.getChilds().add(entry);
+        menuReg = ctx.registerService(IWebMenuEntry.class.getName(), status, null);
+    }
+
+    @Invalidate
+    public void stop() {
+        if (menuReg != null) {
+            menuReg.unregister();
+            menuReg = null;
+        }
+        httpService.unregister(PATH);
+    }
+
+    @Override
+    protected void get(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+        resp.setCharacterEncoding(BrMediathekParser.CHARSET);
+        resp.setHeader("Cache-Control", "no-cache");
+        Collection<OperationMetrics> operations = metrics.getOperations();
+        Map<String, ICacheStatistics> caches = metrics.getCaches();
+        if ("json".equals(req.getParameter("format"))) {
+            resp.setContentType("application/json");
+            writeJson(resp.getWriter(), operations, caches);
+        } else {
+            resp.setContentType("text/html");
+            writeHtml(resp.getWriter(), operations, caches);
+        }
+    }
+
+    @Override
+    protected void post(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+        if (!resetEnabled) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Reset is disabled");
+            return;
+        }
+        if (!"reset".equals(req.getParameter("action"))) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown action");
+            return;
+        }
+        metrics.reset();
+        resp.sendRedirect(PATH);
+    }
+
+    private void writeHtml(PrintWriter out, Collection<OperationMetrics> operations, Map<String, ICacheStatistics> caches) {
+        out.println("<!DOCTYPE html>");
+        out.println("<html><head><title>BR Mediathek GraphQL metrics</title>");
+        out.println("<style>table{border-collapse:collapse}th,td{padding:2px 8px;border:1px solid #ccc;text-align:right}"
+                + "th:first-child,td:first-child{text-align:left}</style></head><body>");
+        out.println("<h1>BR Mediathek GraphQL metrics</h1>");
+        out.println("<p>Times in milliseconds, sizes in kilobytes. Percentiles p50 / p90 / p99 / max.</p>");
+        out.println("<table><tr><th>Operation</th><th>Requests</th><th>Errors</th><th>Persisted query misses</th>"
+                + "<th>Response size</th><th>Time to first byte</th><th>Total time</th><th>Parse time</th></tr>");
+        for (OperationMetrics operation : operations) {
+            out.print("<tr><td>" + escape(operation.getOperation()) + "</td>");
+            out.print("<td>" + operation.getRequests() + "</td><td>" + operation.getErrors() + "</td>");
+            out.print("<td>" + operation.getPersistedQueryMisses() + "</td>");
+            out.print("<td>" + percentiles(operation.getResponseBytes()) + "</td>");
+            out.print("<td>" + percentiles(operation.getTimeToFirstByte()) + "</td>");
+            out.print("<td>" + percentiles(operation.getTotalTime()) + "</td>");
+            out.println("<td>" + percentiles(operation.getParseTime()) + "</td></tr>");
+        }
+        out.println("</table>");
+        out.println("<h2>Caches</h2>");
+        out.println("<table><tr><th>Cache</th><th>Size</th><th>Max. size</th><th>Hits</th><th>Misses</th>"
+                + "<th>Evictions</th><th>Coalesced</th></tr>");
+        for (Entry<String, ICacheStatistics> entry : caches.entrySet()) {
+            ICacheStatistics cache = entry.getValue();
+            out.print("<tr><td>" + escape(entry.getKey()) + "</td>");
+            out.print("<td>" + cache.getSize() + "</td><td>" + cache.getMaxEntries() + "</td>");
+            out.print("<td>" + cache.getHits() + "</td><td>" + cache.getMisses() + "</td>");
+            out.print("<td>" + cache.getEvictions() + "</td>");
+            out.println("<td>" + cache.getCoalesced() + "</td></tr>");
+        }
+        out.println("</table>");
+        if (resetEnabled) {
+            out.println("<form method=\"post\" action=\"" + PATH + "\">"
+                    + "<input type=\"hidden\" name=\"action\" value=\"reset\"/>"
+                    + "<input type=\"submit\" value=\"Reset\"/></form>");
+        }
+        out.println("<p><a href=\"" + PATH + "?format=json\">JSON</a></p>");
+        out.println("</body></html>");
+    }
+
+    /**
+     * Formats the percentiles of a histogram, which contains microseconds or bytes, in milliseconds or kilobytes
+     */
+    private String percentiles(Histogram histogram) {
+        StringBuilder sb = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            sb.append(sb.length() > 0 ? " / " : "");
+            sb.append(String.format("%.1f", histogram.getPercentile(percentile) / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    private void writeJson(PrintWriter out, Collection<OperationMetrics> operations, Map<String, ICacheStatistics> caches) {
+        out.print("{\"operations\":[");
+        boolean first = true;
+        for (OperationMetrics operation : operations) {
+            out.print(first ? "" : ",");
+            first = false;
+            out.print("{\"operation\":" + JSONObject.quote(operation.getOperation()));
+            out.print(",\"requests\":" + operation.getRequests());
+            out.print(",\"errors\":" + operation.getErrors());
+            out.print(",\"persistedQueryMisses\":" + operation.getPersistedQueryMisses());
+            out.print(",\"responseBytes\":" + json(operation.getResponseBytes()));
+            out.print(",\"timeToFirstByteMicros\":" + json(operation.getTimeToFirstByte()));
+            out.print(",\"totalTimeMicros\":" + json(operation.getTotalTime()));
+            out.print(",\"parseTimeMicros\":" + json(operation.getParseTime()));
+            out.print("}");
+        }
+        out.print("],\"caches\":[");
+        first = true;
+        for (Entry<String, ICacheStatistics> entry : caches.entrySet()) {
+            ICacheStatistics cache = entry.getValue();
+            out.print(first ? "" : ",");
+            first = false;
+            out.print("{\"cache\":" + JSONObject.quote(entry.getKey()));
+            out.print(",\"size\":" + cache.getSize());
+            out.print(",\"maxEntries\":" + cache.getMaxEntries());
+            out.print(",\"hits\":" + cache.getHits());
+            out.print(",\"misses\":" + cache.getMisses());
+            out.print(",\"evictions\":" + cache.getEvictions());
+            out.print(",\"coalesced\":" + cache.getCoalesced());
+            out.print("}");
+        }
+        out.println("]}");
+    }
+
+    private String json(Histogram histogram) {
+        return "{\"count\":" + histogram.getCount()
+                + ",\"mean\":" + Math.round(histogram.getMean())
+                + ",\"p50\":" + histogram.getPercentile(50)
+                + ",\"p90\":" + histogram.getPercentile(90)
+                + ",\"p99\":" + histogram.getPercentile(99)
+                + ",\"max\":" + histogram.getMax() + "}";
+    }
+
+    private String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
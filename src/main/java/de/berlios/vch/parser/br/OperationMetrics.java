@@ -0,0 +1,121 @@
+package de.berlios.vch.parser.br;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of one GraphQL operation. Each HTTP request is counted, the histograms contain the successful requests only.
+ * Persisted queries, which the endpoint didn't know, are counted as misses instead of errors, since they are expected
+ * after each restart of the endpoint. Times are recorded in microseconds.
+ */
+public class OperationMetrics {
+
+    private final String operation;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong persistedQueryMisses = new AtomicLong();
+
+    private final Histogram responseBytes = new Histogram();
+
+    private final Histogram timeToFirstByte = new Histogram();
+
+    private final Histogram totalTime = new Histogram();
+
+    private final Histogram parseTime = new Histogram();
+
+    public OperationMetrics(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Records a successful request
+     *
+     * @param bytes
+     *            size of the response body as received, i.e. compressed
+     * @param timeToFirstByte
+     *            time in nanoseconds from sending the request until the response header has been received
+     * @param totalTime
+     *            time in nanoseconds from sending the request until the response has been decoded
+     * @param parseTime
+     *            time in nanoseconds spent decompressing and decoding the response, without waiting for the network
+     */
+    public void record(long bytes, long timeToFirstByte, long totalTime, long parseTime) {
+        requests.incrementAndGet();
+        this.responseBytes.record(bytes);
+        this.timeToFirstByte.record(TimeUnit.NANOSECONDS.toMicros(timeToFirstByte));
+        this.totalTime.record(TimeUnit.NANOSECONDS.toMicros(totalTime));
+        this.parseTime.record(TimeUnit.NANOSECONDS.toMicros(parseTime));
+    }
+
+    /**
+     * Records a failed request
+     */
+    public void recordError() {
+        requests.incrementAndGet();
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Records a request with a persisted query hash, which the endpoint didn't know
+     */
+    public void recordPersistedQueryMiss() {
+        requests.incrementAndGet();
+        persistedQueryMisses.incrementAndGet();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getPersistedQueryMisses() {
+        return persistedQueryMisses.get();
+    }
+
+    /** @return the sizes of the responses in bytes */
+    public Histogram getResponseBytes() {
+        return responseBytes;
+    }
+
+    /** @return the times to first byte in microseconds */
+    public Histogram getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /** @return the total times in microseconds */
+    public Histogram getTotalTime() {
+        return totalTime;
+    }
+
+    /** @return the parse and mapping times in microseconds */
+    public Histogram getParseTime() {
+        return parseTime;
+    }
+
+    public void reset() {
+        requests.set(0);
+        errors.set(0);
+        persistedQueryMisses.set(0);
+        responseBytes.reset();
+        timeToFirstByte.reset();
+        totalTime.reset();
+        parseTime.reset();
+    }
+
+    @Override
+    public String toString() {
+        return operation + "[requests=" + requests + ", errors=" + errors + ", persistedQueryMisses="
+                + persistedQueryMisses + ", total p50="
+                + totalTime.getPercentile(50) + "us, p99=" + totalTime.getPercentile(99) + "us]";
+    }
+}
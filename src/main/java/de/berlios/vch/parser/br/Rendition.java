@@ -0,0 +1,68 @@
+package de.berlios.vch.parser.br;
+
+import java.net.URI;
+
+/**
+ * One video file of a clip. Width and height are 0, if the endpoint didn't report them.
+ */
+public class Rendition {
+
+    private final URI uri;
+
+    private final int width;
+
+    private final int height;
+
+    private final String mimetype;
+
+    Rendition(URI uri, int width, int height, String mimetype) {
+        this.uri = uri;
+        this.width = width;
+        this.height = height;
+        this.mimetype = mimetype;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getMimetype() {
+        return mimetype;
+    }
+
+    /**
+     * The endpoint doesn't report bitrates, so they are estimated from the height with the bitrates of the usual H.264
+     * encoding ladder.
+     *
+     * @return the estimated bitrate in kbit/s or 0, if the height is unknown
+     */
+    public int getEstimatedBitrate() {
+        if (height <= 0) {
+            return 0;
+        } else if (height <= 180) {
+            return 350;
+        } else if (height <= 288) {
+            return 700;
+        } else if (height <= 360) {
+            return 1200;
+        } else if (height <= 576) {
+            return 2000;
+        } else if (height <= 720) {
+            return 3500;
+        }
+        return 6000;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " " + mimetype + " " + uri;
+    }
+}
@@ -0,0 +1,164 @@
+package de.berlios.vch.parser.br;
+
+import java.util.List;
+
+/**
+ * Constraints of a client for the selection of a {@link Rendition}. A profile is configured as
+ * <code>name:maxHeight=360,maxWidth=640,maxBitrate=1200,mimetype=video/mp4</code>. All constraints are optional, the
+ * bitrate is given in kbit/s.
+ */
+public class RenditionProfile {
+
+    /** profile without constraints, which selects the rendition with the greatest resolution */
+    public static final RenditionProfile BEST = new RenditionProfile("best", 0, 0, 0, null);
+
+    private final String name;
+
+    private final int maxHeight;
+
+    private final int maxWidth;
+
+    private final int maxBitrate;
+
+    private final String mimetype;
+
+    public RenditionProfile(String name, int maxHeight, int maxWidth, int maxBitrate, String mimetype) {
+        this.name = name;
+        this.maxHeight = maxHeight;
+        this.maxWidth = maxWidth;
+        this.maxBitrate = maxBitrate;
+        this.mimetype = mimetype;
+    }
+
+    /**
+     * Parses a profile of the form <code>name:key=value,key=value</code>
+     *
+     * @throws IllegalArgumentException
+     *             if the profile can't be parsed
+     */
+    public static RenditionProfile parse(String profile) {
+        int colon = profile.indexOf(':');
+        String name = (colon >= 0 ? profile.substring(0, colon) : profile).trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Rendition profile without name: " + profile);
+        }
+        int maxHeight = 0;
+        int maxWidth = 0;
+        int maxBitrate = 0;
+        String mimetype = null;
+        String constraints = colon >= 0 ? profile.substring(colon + 1).trim() : "";
+        if (!constraints.isEmpty()) {
+            for (String constraint : constraints.split(",")) {
+                String[] keyValue = constraint.split("=", 2);
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("Invalid constraint \"" + constraint + "\" in rendition profile " + name);
+                }
+                String key = keyValue[0].trim();
+                String value = keyValue[1].trim();
+                try {
+                    if ("maxHeight".equals(key)) {
+                        maxHeight = Integer.parseInt(value);
+                    } else if ("maxWidth".equals(key)) {
+                        maxWidth = Integer.parseInt(value);
+                    } else if ("maxBitrate".equals(key)) {
+                        maxBitrate = Integer.parseInt(value);
+                    } else if ("mimetype".equals(key)) {
+                        mimetype = value;
+                    } else {
+                        throw new IllegalArgumentException("Unknown constraint " + key + " in rendition profile " + name);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value of " + key + " in rendition profile " + name);
+                }
+            }
+        }
+        return new RenditionProfile(name, maxHeight, maxWidth, maxBitrate, mimetype);
+    }
+
+    /**
+     * Selects the rendition with the greatest resolution, which satisfies the constraints. If no rendition satisfies
+     * them, the one with the smallest resolution is selected. Renditions of unknown size are only selected, if there is
+     * no suitable rendition of known size.
+     *
+     * @return the selected rendition or <code>null</code>, if the list is empty
+     */
+    public Rendition select(List<Rendition> renditions) {
+        Rendition best = null;
+        Rendition smallest = null;
+        for (Rendition rendition : renditions) {
+            if (mimetype != null && !mimetype.equals(rendition.getMimetype())) {
+                continue;
+            }
+            if (smallest == null || compareSmallest(rendition, smallest) < 0) {
+                smallest = rendition;
+            }
+            if (accepts(rendition) && (best == null || compare(rendition, best) > 0)) {
+                best = rendition;
+            }
+        }
+        if (smallest == null && mimetype != null && !renditions.isEmpty()) {
+            // no rendition of the requested type, better play another type than nothing
+            return new RenditionProfile(name, maxHeight, maxWidth, maxBitrate, null).select(renditions);
+        }
+        return best != null ? best : smallest;
+    }
+
+    /**
+     * @return <code>true</code>, if the rendition satisfies the constraints. An unknown value doesn't satisfy a
+     *         constraint.
+     */
+    private boolean accepts(Rendition rendition) {
+        return fits(rendition.getHeight(), maxHeight) && fits(rendition.getWidth(), maxWidth)
+                && fits(rendition.getEstimatedBitrate(), maxBitrate);
+    }
+
+    private static boolean fits(int value, int max) {
+        return max <= 0 || (value > 0 && value <= max);
+    }
+
+    /**
+     * Orders the renditions by resolution like {@link #compare(Rendition, Rendition)}, but with the renditions of
+     * unknown size last
+     */
+    private int compareSmallest(Rendition a, Rendition b) {
+        boolean unknownA = a.getHeight() <= 0;
+        boolean unknownB = b.getHeight() <= 0;
+        if (unknownA != unknownB) {
+            return unknownA ? 1 : -1;
+        }
+        return compare(a, b);
+    }
+
+    private int compare(Rendition a, Rendition b) {
+        if (a.getHeight() != b.getHeight()) {
+            return a.getHeight() < b.getHeight() ? -1 : 1;
+        }
+        return a.getWidth() < b.getWidth() ? -1 : (a.getWidth() == b.getWidth() ? 0 : 1);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxBitrate() {
+        return maxBitrate;
+    }
+
+    public String getMimetype() {
+        return mimetype;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[maxHeight=" + maxHeight + ", maxWidth=" + maxWidth + ", maxBitrate=" + maxBitrate + ", mimetype="
+                + mimetype + "]";
+    }
+}
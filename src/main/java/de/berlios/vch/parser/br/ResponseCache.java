@@ -0,0 +1,232 @@
+package de.berlios.vch.parser.br;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Bounded in-memory cache for the results of GraphQL lookups. Entries are keyed by operation and variables, expire
+ * after a per-entry time to live and are evicted in least-recently-used order once the cache is full. Concurrent loads
+ * of the same missing entry are merged with a {@link SingleFlight}.
+ *
+ * @param <V>
+ *            the type of the cached values
+ */
+public class ResponseCache<V> implements ICacheStatistics {
+
+    private final int maxEntries;
+
+    private final Map<String, CacheEntry<V>> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private final SingleFlight<V> loads = new SingleFlight<V>();
+
+    public ResponseCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries has to be greater than 0");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<V>> eldest) {
+                boolean full = size() > ResponseCache.this.maxEntries;
+                if (full) {
+                    evictions++;
+                }
+                return full;
+            }
+        };
+    }
+
+    /**
+     * Creates the cache key for an operation and its variables
+     */
+    public static String key(String operation, String... variables) {
+        StringBuilder sb = new StringBuilder(operation);
+        for (String variable : variables) {
+            sb.append('|').append(variable != null ? variable : "");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the cached value or <code>null</code>, if there is no entry for the key or the entry has expired
+     */
+    public synchronized V get(String key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Looks up a value like {@link #get(String)}, but without counting a hit or miss, for internal checks, which
+     * shouldn't distort the statistics
+     *
+     * @return the cached value or <code>null</code>, if there is no valid entry for the key
+     */
+    synchronized V peek(String key) {
+        CacheEntry<V> entry = entries.get(key);
+        return entry != null && !entry.isExpired(System.currentTimeMillis()) ? entry.value : null;
+    }
+
+    /**
+     * Returns the cached value or loads and caches it, if there is no valid entry. While a value is loaded, other
+     * callers with the same key wait for it instead of loading it again.
+     *
+     * @param ttl
+     *            time to live of the loaded value in milliseconds
+     */
+    public V get(final String key, final Callable<V> loader, final long ttl) throws IOException {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        return loads.execute(key, new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                V value = loader.call();
+                put(key, value, ttl);
+                return value;
+            }
+        });
+    }
+
+    /**
+     * Loads several missing entries with one request. Keys, which are cached or already loading, are skipped. Callers of
+     * {@link #get(String, Callable, long)}, which ask for a key of the batch while it is loading, wait for the batch. If the
+     * batch doesn't return a value for the key or fails, they load the value themselves.
+     *
+     * @param ttl
+     *            time to live of the loaded values in milliseconds
+     */
+    public void load(Collection<String> keys, BatchLoader<V> loader, long ttl) throws IOException {
+        List<String> missing = new ArrayList<String>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (String key : keys) {
+                CacheEntry<V> entry = entries.get(key);
+                if (entry == null || entry.isExpired(now)) {
+                    missing.add(key);
+                }
+            }
+        }
+        List<String> claimed = loads.claim(missing);
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        Map<String, V> values = null;
+        IOException failure = null;
+        try {
+            values = loader.load(claimed);
+        } catch (IOException e) {
+            failure = e;
+        } catch (Exception e) {
+            failure = new IOException(e);
+        } finally {
+            for (String key : claimed) {
+                V value = values != null ? values.get(key) : null;
+                if (value != null) {
+                    put(key, value, ttl);
+                    loads.complete(key, value);
+                } else {
+                    loads.release(key);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stores a value, which is valid for <code>ttl</code> milliseconds. A ttl less than or equal to 0 disables caching
+     * for this value.
+     */
+    public synchronized void put(String key, V value, long ttl) {
+        if (ttl <= 0 || value == null) {
+            return;
+        }
+        entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis() + ttl));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public long getCoalesced() {
+        return loads.getCoalesced();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResponseCache[size=" + entries.size() + ", max=" + maxEntries + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + ", coalesced=" + loads.getCoalesced() + "]";
+    }
+
+    /**
+     * Loads the values of several keys with one request
+     */
+    public interface BatchLoader<V> {
+        /**
+         * @return map of the keys to the loaded values. Keys, which couldn't be loaded, are missing.
+         */
+        Map<String, V> load(List<String> keys) throws Exception;
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expires;
+
+        private CacheEntry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expires;
+        }
+    }
+}
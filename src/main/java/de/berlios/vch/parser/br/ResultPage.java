@@ -0,0 +1,39 @@
+package de.berlios.vch.parser.br;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.berlios.vch.parser.IWebPage;
+
+/**
+ * One page of a paginated GraphQL connection. Contains the pages created from the nodes of the connection and the
+ * cursor of the next page.
+ */
+class ResultPage {
+
+    private final List<IWebPage> pages = new ArrayList<IWebPage>();
+
+    private String endCursor;
+
+    private boolean hasNextPage = false;
+
+    public List<IWebPage> getPages() {
+        return pages;
+    }
+
+    public String getEndCursor() {
+        return endCursor;
+    }
+
+    void setEndCursor(String endCursor) {
+        this.endCursor = endCursor;
+    }
+
+    public boolean hasNextPage() {
+        return hasNextPage && endCursor != null;
+    }
+
+    void setHasNextPage(boolean hasNextPage) {
+        this.hasNextPage = hasNextPage;
+    }
+}
@@ -0,0 +1,139 @@
+package de.berlios.vch.parser.br;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges concurrent identical requests. While a request for a key is in flight, other callers with the same key wait
+ * for its result instead of sending the same request again. A batch request can claim several keys at once with
+ * {@link #claim(Collection)} and has to complete or release each claimed key.
+ *
+ * @param <V>
+ *            the type of the results
+ */
+class SingleFlight<V> {
+
+    private final ConcurrentMap<String, Flight<V>> calls = new ConcurrentHashMap<String, Flight<V>>();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Executes the loader, if there is no call for the key in flight, otherwise waits for the result of that call. If
+     * the call in flight is a claim, which is released without result, the loader is executed afterwards.
+     */
+    public V execute(String key, Callable<V> loader) throws IOException {
+        while (true) {
+            Flight<V> task = new Flight<V>(loader);
+            Flight<V> call = calls.putIfAbsent(key, task);
+            if (call == null) {
+                try {
+                    task.run();
+                } finally {
+                    calls.remove(key, task);
+                }
+                return get(key, task);
+            }
+
+            V value = get(key, call);
+            if (!call.released) {
+                coalesced.incrementAndGet();
+                return value;
+            }
+        }
+    }
+
+    private V get(String key, Flight<V> call) throws IOException {
+        try {
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Marks the keys, which are not in flight, as in flight. Callers of {@link #execute(String, Callable)} with one of
+     * these keys wait, until the key is completed with {@link #complete(String, Object)} or released with
+     * {@link #release(String)}.
+     *
+     * @return the claimed keys
+     */
+    public List<String> claim(Collection<String> keys) {
+        List<String> claimed = new ArrayList<String>();
+        for (String key : keys) {
+            if (calls.putIfAbsent(key, new Flight<V>(null)) == null) {
+                claimed.add(key);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Completes a claimed key with its result
+     */
+    public void complete(String key, V value) {
+        Flight<V> flight = calls.remove(key);
+        if (flight != null) {
+            flight.complete(value);
+        }
+    }
+
+    /**
+     * Releases a claimed key without result. Callers waiting for the key execute their own loaders.
+     */
+    public void release(String key) {
+        Flight<V> flight = calls.remove(key);
+        if (flight != null) {
+            flight.release();
+        }
+    }
+
+    /**
+     * @return the number of calls, which have been served by a call in flight
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private static class Flight<V> extends FutureTask<V> {
+
+        private volatile boolean released = false;
+
+        private Flight(Callable<V> loader) {
+            super(loader != null ? loader : new Callable<V>() {
+                @Override
+                public V call() {
+                    throw new IllegalStateException("Claimed call can't be run");
+                }
+            });
+        }
+
+        private void complete(V value) {
+            set(value);
+        }
+
+        private void release() {
+            released = true;
+            set(null);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package de.berlios.vch.parser.br;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        CatalogIndex index = createIndex();
+        File file = folder.newFile("catalog.idx");
+        index.save(file);
+
+        CatalogIndex loaded = new CatalogIndex();
+        loaded.load(file);
+        assertEquals(index.getUpdated(), loaded.getUpdated());
+        assertEquals(Arrays.asList("a2", "a1", "b1"), loaded.getSeriesIds());
+
+        List<CatalogIndex.Series> series = loaded.getSeries("A");
+        assertEquals(2, series.size());
+        assertEquals("a2", series.get(0).getId());
+        assertEquals("Abendschau", series.get(0).getTitle());
+        assertEquals("A", series.get(0).getLetter());
+        assertEquals("\u00c4rger im Revier", series.get(1).getTitle());
+
+        List<CatalogIndex.Episode> episodes = loaded.getEpisodes("a1");
+        assertEquals(2, episodes.size());
+        assertEquals("e2", episodes.get(0).getId());
+        assertEquals("a1", episodes.get(0).getSeriesId());
+        assertEquals("Folge 2", episodes.get(0).getTitle());
+        assertEquals(1800, episodes.get(0).getDuration());
+        assertEquals(2000L, episodes.get(0).getBroadcast());
+        assertEquals("", loaded.getEpisodes("b1").get(0).getTitle());
+
+        assertEquals(1, loaded.searchSeriesByPrefix("abend", 10).size());
+        assertEquals(1, loaded.searchEpisodes("folge 1", 10).size());
+    }
+
+    @Test
+    public void testSaveReplacesFile() throws IOException {
+        File file = folder.newFile("catalog.idx");
+        new CatalogIndex().save(file);
+        createIndex().save(file);
+
+        CatalogIndex loaded = new CatalogIndex();
+        loaded.load(file);
+        assertEquals(3, loaded.getSeriesIds().size());
+        assertTrue(!new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException {
+        File file = folder.newFile("catalog.idx");
+        createIndex().save(file);
+        long length = file.length();
+        for (long l = 0; l < length; l++) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(l);
+            } finally {
+                raf.close();
+            }
+            assertCorrupt(file);
+            createIndex().save(file);
+        }
+    }
+
+    @Test
+    public void testInvalidStringLength() throws IOException {
+        // header, one letter with a string length, which is larger than the file
+        assertCorrupt(writeFile(0x42524958, 1, 0, 0, 1, Integer.MAX_VALUE));
+        assertCorrupt(writeFile(0x42524958, 1, 0, 0, 1, -1));
+    }
+
+    @Test
+    public void testInvalidCount() throws IOException {
+        assertCorrupt(writeFile(0x42524958, 1, 0, 0, Integer.MAX_VALUE));
+        assertCorrupt(writeFile(0x42524958, 1, 0, 0, -5));
+    }
+
+    @Test
+    public void testUnsupportedFile() throws IOException {
+        assertCorrupt(writeFile(0x12345678, 1, 0, 0, 0, 0));
+        assertCorrupt(writeFile(0x42524958, 99, 0, 0, 0, 0));
+    }
+
+    @Test
+    public void testFailedLoadKeepsIndex() throws IOException {
+        CatalogIndex index = createIndex();
+        try {
+            index.load(writeFile(0x42524958, 1, 0, 0, 1, Integer.MAX_VALUE));
+            fail("corrupt file loaded");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(3, index.getSeriesIds().size());
+    }
+
+    private CatalogIndex createIndex() {
+        CatalogIndex index = new CatalogIndex();
+        index.updateLetter("A", Arrays.asList(new CatalogIndex.Series("a1", "\u00c4rger im Revier", "A"),
+                new CatalogIndex.Series("a2", "Abendschau", "A")));
+        index.updateLetter("B", Arrays.asList(new CatalogIndex.Series("b1", "Brotzeit", "B")));
+        index.mergeEpisodes("a1", Arrays.asList(new CatalogIndex.Episode("e1", "a1", "Folge 1", 1700, 1000),
+                new CatalogIndex.Episode("e2", "a1", "Folge 2", 1800, 2000)));
+        index.mergeEpisodes("b1", Arrays.asList(new CatalogIndex.Episode("e3", "b1", null, 60, 3000)));
+        return index;
+    }
+
+    /**
+     * Writes an index file, which consists of the given ints. The magic number and version are followed by the update
+     * time as two ints.
+     */
+    private File writeFile(int... ints) throws IOException {
+        File file = folder.newFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (int i : ints) {
+                out.writeInt(i);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private void assertCorrupt(File file) {
+        CatalogIndex index = new CatalogIndex();
+        try {
+            index.load(file);
+            fail("corrupt file " + file + " with " + file.length() + " bytes loaded");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(index.isEmpty());
+    }
+}
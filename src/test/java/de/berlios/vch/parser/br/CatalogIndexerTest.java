@@ -0,0 +1,78 @@
+package de.berlios.vch.parser.br;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogIndexerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeParser parser = new FakeParser(3);
+
+    private final CatalogIndex index = new CatalogIndex();
+
+    private CatalogIndexer createIndexer() throws IOException {
+        return new CatalogIndexer(parser, index, folder.newFile(), FakeParser.createLogger(), 0, true, 2, 3, 5);
+    }
+
+    @Test
+    public void testFirstCrawlReadsFirstPage() throws IOException {
+        parser.setSeries("A", "s1", "s2", "s3");
+        parser.setEpisodes("s1", "e5", "e4", "e3", "e2", "e1");
+        parser.setEpisodes("s2", "f1");
+        createIndexer().run();
+        assertEquals(Arrays.asList("e5", "e4", "e3"), ids("s1"));
+        assertEquals(Arrays.asList("f1"), ids("s2"));
+        assertEquals(Arrays.asList(), ids("s3"));
+    }
+
+    @Test
+    public void testCrawlStopsAtPageWithIndexedEpisode() throws IOException {
+        parser.setSeries("A", "s1");
+        parser.setEpisodes("s1", "e1");
+        CatalogIndexer indexer = createIndexer();
+        indexer.run();
+
+        // the second page contains e1, so e0 on the third page isn't requested
+        parser.setEpisodes("s1", "e6", "e5", "e4", "e3", "e2", "e1", "e0");
+        indexer.run();
+        assertEquals(Arrays.asList("e1", "e2", "e3", "e4", "e5", "e6"), sorted(ids("s1")));
+    }
+
+    @Test
+    public void testReversionedEpisodeDoesNotHideNewEpisodes() throws IOException {
+        parser.setSeries("A", "s1");
+        parser.setEpisodes("s1", "e3", "e2", "e1");
+        CatalogIndexer indexer = createIndexer();
+        indexer.run();
+
+        // e1 got a new version and moved to the top
+        parser.setEpisodes("s1", "e1", "e4", "e3", "e2");
+        indexer.run();
+        assertEquals(Arrays.asList("e1", "e2", "e3", "e4"), sorted(ids("s1")));
+    }
+
+    private List<String> ids(String seriesId) {
+        List<String> ids = new ArrayList<String>();
+        for (CatalogIndex.Episode episode : index.getEpisodes(seriesId)) {
+            ids.add(episode.getId());
+        }
+        return ids;
+    }
+
+    private List<String> sorted(List<String> ids) {
+        List<String> sorted = new ArrayList<String>(ids);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
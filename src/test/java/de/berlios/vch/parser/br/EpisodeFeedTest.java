@@ -0,0 +1,128 @@
+package de.berlios.vch.parser.br;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.berlios.vch.parser.IVideoPage;
+
+public class EpisodeFeedTest {
+
+    private final FakeParser parser = new FakeParser(3);
+
+    private final EpisodeFeed feed = new EpisodeFeed(parser, null, FakeParser.createLogger(), 2, 3, 5);
+
+    @Test
+    public void testFirstPollSubscribes() throws IOException {
+        parser.setEpisodes("s1", "e2", "e1");
+        assertTrue(feed.poll("s1").isEmpty());
+        assertTrue(feed.isSubscribed("s1"));
+        assertTrue(feed.poll("s1").isEmpty());
+    }
+
+    @Test
+    public void testNewEpisodes() throws IOException {
+        parser.setEpisodes("s1", "e1");
+        feed.subscribe("s1");
+
+        // the page with e1 is the last one, which is requested
+        parser.setEpisodes("s1", "e6", "e5", "e4", "e3", "e2", "e1", "e0");
+        int requests = parser.requests;
+        assertEquals(Arrays.asList("e6", "e5", "e4", "e3", "e2"), FakeParser.ids(feed.poll("s1")));
+        assertEquals(requests + 2, parser.requests);
+        assertTrue(feed.poll("s1").isEmpty());
+    }
+
+    @Test
+    public void testReversionedEpisodeDoesNotHideNewEpisodes() throws IOException {
+        parser.setEpisodes("s1", "e3", "e2", "e1");
+        feed.subscribe("s1");
+
+        // e1 got a new version and moved to the top
+        parser.setEpisodes("s1", "e1", "e4", "e3", "e2");
+        assertEquals(Arrays.asList("e4"), FakeParser.ids(feed.poll("s1")));
+        assertTrue(feed.poll("s1").isEmpty());
+    }
+
+    @Test
+    public void testPollSeveralSeries() throws IOException {
+        parser.setEpisodes("s1", "a1");
+        parser.setEpisodes("s2", "b1");
+        parser.setEpisodes("s3", "c1");
+        feed.poll(Arrays.asList("s1", "s2", "s3", "unknown"));
+        assertEquals(3, feed.getSubscriptions().size());
+
+        parser.setEpisodes("s1", "a2", "a1");
+        parser.setEpisodes("s3", "c1", "c2");
+        Map<String, List<IVideoPage>> newEpisodes = feed.poll(feed.getSubscriptions());
+        assertEquals(Arrays.asList("a2"), FakeParser.ids(newEpisodes.get("s1")));
+        assertEquals(Collections.emptyList(), newEpisodes.get("s2"));
+        assertEquals(Arrays.asList("c2"), FakeParser.ids(newEpisodes.get("s3")));
+    }
+
+    @Test
+    public void testInterruptStopsPoll() throws IOException {
+        parser.setEpisodes("s1", "a1");
+        parser.setEpisodes("s2", "b1");
+        parser.setEpisodes("s3", "c1");
+        Thread.currentThread().interrupt();
+        try {
+            assertTrue(feed.poll(Arrays.asList("s1", "s2", "s3")).isEmpty());
+            assertEquals(0, parser.requests);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testSubscribeDuringPoll() throws Exception {
+        final CountDownLatch polling = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        FakeParser blockingParser = new FakeParser(3) {
+            @Override
+            Map<String, ResultPage> fetchProgramPages(List<String> ids, int first) throws IOException {
+                polling.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return super.fetchProgramPages(ids, first);
+            }
+        };
+        blockingParser.setEpisodes("s1", "a1");
+        blockingParser.setEpisodes("s2", "b1");
+        final EpisodeFeed feed = new EpisodeFeed(blockingParser, null, FakeParser.createLogger(), 2, 3, 5);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> poll = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    feed.poll(Arrays.asList("s1"));
+                }
+            });
+            polling.await();
+            // doesn't wait for the running poll
+            feed.subscribe("s2");
+            assertEquals(Collections.singleton("s2"), feed.getSubscriptions());
+            done.countDown();
+            poll.get(5, TimeUnit.SECONDS);
+            assertEquals(2, feed.getSubscriptions().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
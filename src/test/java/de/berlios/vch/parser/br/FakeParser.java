@@ -0,0 +1,117 @@
+package de.berlios.vch.parser.br;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.service.log.LogService;
+
+import de.berlios.vch.parser.IWebPage;
+import de.berlios.vch.parser.OverviewPage;
+import de.berlios.vch.parser.VideoPage;
+
+/**
+ * Parser, which answers the requests of the {@link EpisodeFeed} and the {@link CatalogIndexer} from lists of ids
+ * instead of the GraphQL endpoint
+ */
+class FakeParser extends BrMediathekParser {
+
+    /** episode ids of each series, newest version first */
+    private final Map<String, List<String>> episodes = new HashMap<String, List<String>>();
+
+    private final Map<String, List<String>> series = new HashMap<String, List<String>>();
+
+    private final int pageSize;
+
+    int requests = 0;
+
+    FakeParser(int pageSize) {
+        super(null);
+        this.pageSize = pageSize;
+    }
+
+    void setEpisodes(String seriesId, String... ids) {
+        episodes.put(seriesId, Arrays.asList(ids));
+    }
+
+    void setSeries(String letter, String... ids) {
+        series.put(letter, Arrays.asList(ids));
+    }
+
+    @Override
+    ResultPage fetchAlphabetPage(String letter, String after) throws IOException {
+        requests++;
+        ResultPage page = new ResultPage();
+        List<String> ids = series.get(letter);
+        if (ids != null) {
+            for (String id : ids) {
+                OverviewPage program = new OverviewPage();
+                program.setTitle(id);
+                program.setUri(URI.create("br://program/" + id));
+                page.getPages().add(program);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    ResultPage fetchProgramPage(String id, int first, String after) throws IOException {
+        requests++;
+        return page(id, after != null ? Integer.parseInt(after) : 0);
+    }
+
+    @Override
+    Map<String, ResultPage> fetchProgramPages(List<String> ids, int first) throws IOException {
+        requests++;
+        Map<String, ResultPage> pages = new HashMap<String, ResultPage>();
+        for (String id : ids) {
+            if (episodes.containsKey(id)) {
+                pages.put(id, page(id, 0));
+            }
+        }
+        return pages;
+    }
+
+    private ResultPage page(String seriesId, int offset) throws IOException {
+        List<String> ids = episodes.get(seriesId);
+        if (ids == null) {
+            throw new IOException("Unknown series " + seriesId);
+        }
+        ResultPage page = new ResultPage();
+        int end = Math.min(ids.size(), offset + pageSize);
+        for (String id : ids.subList(offset, end)) {
+            VideoPage video = new VideoPage();
+            video.setTitle(id);
+            video.setUri(URI.create("br://video/" + id));
+            page.getPages().add(video);
+        }
+        page.setHasNextPage(end < ids.size());
+        page.setEndCursor(Integer.toString(end));
+        return page;
+    }
+
+    static List<String> ids(List<? extends IWebPage> pages) {
+        List<String> ids = new ArrayList<String>();
+        for (IWebPage page : pages) {
+            ids.add(page.getUri().getPath().substring(1));
+        }
+        return ids;
+    }
+
+    static LogService createLogger() {
+        return (LogService) Proxy.newProxyInstance(FakeParser.class.getClassLoader(), new Class<?>[] { LogService.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,169 @@
+package de.berlios.vch.parser.br;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.log.LogService;
+
+import de.berlios.vch.parser.IVideoPage;
+
+public class GraphResponseDecoderTest {
+
+    private GraphResponseDecoder decoder;
+
+    @Before
+    public void setUp() {
+        LogService logger = (LogService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { LogService.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        decoder = new GraphResponseDecoder(BrMediathekParser.ID, logger);
+    }
+
+    @Test
+    public void testDecodeSeries() throws IOException {
+        ResultPage page = decoder.decodeSeries(new StringReader("{\"data\":{\"viewer\":{\"seriesIndexAllSeries\":{"
+                + "\"pageInfo\":{\"hasNextPage\":true,\"endCursor\":\"YXJyYXk=\"},"
+                + "\"edges\":[{\"node\":{\"__typename\":\"Series\",\"id\":\"av:1\",\"title\":\"Abendschau\",\"extra\":[1,2]}},"
+                + "{\"node\":{\"id\":\"av:2\",\"title\":\"Quer\"}}]},\"id\":\"Viewer:__VIEWER\"}}}"));
+        assertEquals(2, page.getPages().size());
+        assertEquals("Abendschau", page.getPages().get(0).getTitle());
+        assertEquals("br://program/av:1", page.getPages().get(0).getUri().toString());
+        assertTrue(page.hasNextPage());
+        assertEquals("YXJyYXk=", page.getEndCursor());
+    }
+
+    @Test
+    public void testNullAndNonObjectNodes() throws IOException {
+        ResultPage page = decoder.decodeSeries(new StringReader("{\"data\":{\"viewer\":{\"seriesIndexAllSeries\":{"
+                + "\"edges\":[null,{\"node\":null},{\"node\":\"av:0\"},42,{\"node\":{\"id\":\"av:1\",\"title\":null}}]}}}}"));
+        assertEquals(1, page.getPages().size());
+        assertNull(page.getPages().get(0).getTitle());
+        assertFalse(page.hasNextPage());
+    }
+
+    @Test
+    public void testNullConnection() throws IOException {
+        ResultPage page = decoder.decodeEpisodes(new StringReader("{\"data\":{\"viewer\":{\"series\":null}}}"));
+        assertTrue(page.getPages().isEmpty());
+        page = decoder.decodeEpisodes(new StringReader("{\"data\":{\"viewer\":{\"series\":{\"previousEpisodes\":null}}}}"));
+        assertTrue(page.getPages().isEmpty());
+    }
+
+    @Test
+    public void testDecodeEpisodes() throws IOException {
+        ResultPage page = decoder.decodeEpisodes(new StringReader("{\"data\":{\"viewer\":{\"series\":{"
+                + "\"previousEpisodes\":{\"pageInfo\":{\"hasNextPage\":false,\"endCursor\":null},\"edges\":[{\"node\":{"
+                + "\"id\":\"av:5\",\"title\":\"Folge 5\",\"duration\":1800,"
+                + "\"broadcasts\":{\"edges\":[{\"node\":{\"start\":\"2018-04-22T23:30:00.000Z\"}}]},"
+                + "\"defaultTeaserImage\":{\"imageFiles\":{\"edges\":[{\"node\":{\"publicLocation\":\"https://img.br.de/1.jpg\"}}]}}"
+                + "}}]}}}}}"));
+        assertEquals(1, page.getPages().size());
+        IVideoPage video = (IVideoPage) page.getPages().get(0);
+        assertEquals("Folge 5", video.getTitle());
+        assertEquals("br://video/av:5", video.getUri().toString());
+        assertEquals(1800, video.getDuration());
+        assertEquals(time("2018-04-22 23:30:00"), video.getPublishDate().getTimeInMillis());
+        assertEquals("https://img.br.de/1.jpg", video.getThumbnail().toString());
+        assertFalse(page.hasNextPage());
+    }
+
+    @Test
+    public void testErrorsOnlyEnvelope() throws IOException {
+        try {
+            decoder.decodeSeries(new StringReader("{\"errors\":[{\"message\":\"PersistedQueryNotFound\","
+                    + "\"extensions\":{\"code\":\"PERSISTED_QUERY_NOT_FOUND\"}},{\"message\":\"Second\"}]}"));
+            fail("GraphQLException expected");
+        } catch (GraphQLException e) {
+            assertEquals(Arrays.asList("PersistedQueryNotFound", "Second"), e.getErrors());
+            assertTrue(e.hasError("PersistedQueryNotFound"));
+        }
+    }
+
+    @Test(expected = GraphQLException.class)
+    public void testNullData() throws IOException {
+        decoder.decodeClip(new StringReader("{\"errors\":[{\"message\":\"Internal error\"}],\"data\":null}"));
+    }
+
+    @Test
+    public void testPartialDataWithErrors() throws IOException {
+        Map<String, ClipDetails> clips = decoder.decodeClips(new StringReader("{\"errors\":[{\"message\":\"Not found\"}],"
+                + "\"data\":{\"viewer\":{\"c0\":{\"shortDescription\":\"Eins\"},\"c1\":null}}}"));
+        assertEquals(1, clips.size());
+        assertEquals("Eins", clips.get("c0").getDescription());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedResponse() throws IOException {
+        decoder.decodeSeries(new StringReader("{\"data\":{\"viewer\":{\"seriesIndexAllSeries\":{\"edges\":[{"));
+    }
+
+    @Test
+    public void testDecodeClip() throws IOException {
+        ClipDetails clip = decoder.decodeClip(new StringReader("{\"data\":{\"viewer\":{\"clip\":{"
+                + "\"shortDescription\":\"Beschreibung\",\"videoFiles\":{\"edges\":["
+                + "{\"node\":{\"publicLocation\":\"https://cdn/360.mp4\",\"mimetype\":\"video/mp4\","
+                + "\"videoProfile\":{\"width\":640,\"height\":360}}},"
+                + "{\"node\":{\"publicLocation\":\"https://cdn/720.mp4\",\"mimetype\":\"video/mp4\","
+                + "\"videoProfile\":{\"width\":\"1280\",\"height\":\"720p\"}}},"
+                + "{\"node\":{\"publicLocation\":null,\"videoProfile\":{\"height\":1080}}}]}}}}}"));
+        assertEquals("Beschreibung", clip.getDescription());
+        List<Rendition> renditions = clip.getRenditions();
+        assertEquals(2, renditions.size());
+        assertEquals(720, renditions.get(0).getHeight());
+        assertEquals(1280, renditions.get(0).getWidth());
+        assertEquals("https://cdn/720.mp4", renditions.get(0).getUri().toString());
+        assertEquals(360, renditions.get(1).getHeight());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingClip() throws IOException {
+        decoder.decodeClip(new StringReader("{\"data\":{\"viewer\":{\"clip\":null}}}"));
+    }
+
+    @Test
+    public void testDecodeEpisodeBatch() throws IOException {
+        Map<String, ResultPage> series = decoder.decodeEpisodeBatch(new StringReader("{\"data\":{\"viewer\":{"
+                + "\"s0\":{\"previousEpisodes\":{\"edges\":[{\"node\":{\"id\":\"av:1\"}},{\"node\":{\"id\":\"av:2\"}}]}},"
+                + "\"s1\":null}}}"));
+        assertEquals(1, series.size());
+        assertEquals(2, series.get("s0").getPages().size());
+    }
+
+    @Test
+    public void testParsePubDate() {
+        assertEquals(time("2018-04-22 23:30:00"), decoder.parsePubDate("2018-04-22T23:30:00.000Z").getTimeInMillis());
+        assertEquals(0, decoder.parsePubDate("yesterday").getTimeInMillis());
+        assertEquals(0, decoder.parsePubDate(null).getTimeInMillis());
+    }
+
+    /**
+     * The broadcast times are parsed in the default time zone
+     */
+    private long time(String time) {
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(time).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.berlios.vch.parser.br;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testExactBuckets() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, Histogram.index(value));
+            assertEquals(value, Histogram.upperBound(value));
+        }
+    }
+
+    @Test
+    public void testBucketBounds() {
+        long[] values = { 16, 17, 18, 19, 20, 31, 32, 33, 35, 36, 63, 64, 100, 1000, 1023, 1024, 1025, 123456789L,
+                1L << 40, (1L << 40) - 1, (1L << 40) + 1, Long.MAX_VALUE - 1, Long.MAX_VALUE };
+        for (long value : values) {
+            int index = Histogram.index(value);
+            assertTrue("value " + value + " above its bucket", value <= Histogram.upperBound(index));
+            assertTrue("value " + value + " below its bucket", value > Histogram.upperBound(index - 1));
+            // the bucket width is at most an eighth of its lower bound
+            long lower = Histogram.upperBound(index - 1) + 1;
+            assertTrue("bucket of " + value + " too wide", Histogram.upperBound(index) - lower < lower / 8 + 1);
+        }
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        int last = Histogram.index(Long.MAX_VALUE);
+        for (int index = 1; index <= last; index++) {
+            long bound = Histogram.upperBound(index - 1);
+            assertEquals(index, Histogram.index(bound + 1));
+            assertEquals(index - 1, Histogram.index(bound));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(last));
+    }
+
+    @Test
+    public void testLogBuckets() {
+        // 16..31 are split into 8 buckets of 2 values, 32..63 into 8 buckets of 4 values
+        assertEquals(16, Histogram.index(16));
+        assertEquals(16, Histogram.index(17));
+        assertEquals(17, Histogram.index(18));
+        assertEquals(17, Histogram.upperBound(16));
+        assertEquals(31, Histogram.upperBound(23));
+        assertEquals(24, Histogram.index(32));
+        assertEquals(24, Histogram.index(35));
+        assertEquals(35, Histogram.upperBound(24));
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(10, histogram.getPercentile(10));
+        // 50 is in the bucket 48..51
+        assertEquals(51, histogram.getPercentile(50));
+        // 99 is in the bucket 96..103, which is limited by the maximum
+        assertEquals(100, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testNegativeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testReset() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getPercentile(99));
+        histogram.record(3);
+        assertEquals(3, histogram.getPercentile(50));
+    }
+}
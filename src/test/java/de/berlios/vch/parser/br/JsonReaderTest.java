@@ -0,0 +1,188 @@
+package de.berlios.vch.parser.br;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class JsonReaderTest {
+
+    @Test
+    public void testEscapes() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\", \"\\u00f6\\u00DF\\u20ac\"]"));
+        reader.beginArray();
+        assertEquals("a\"b\\c/d\b\f\n\r\t", reader.nextString());
+        assertEquals("\u00f6\u00df\u20ac", reader.nextString());
+        reader.endArray();
+        assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void testSurrogatePair() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("\"\\ud83d\\ude00\""));
+        assertEquals("\ud83d\ude00", reader.nextString());
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidUnicodeEscape() throws IOException {
+        new JsonReader(new StringReader("\"\\u00g6\"")).nextString();
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnterminatedString() throws IOException {
+        new JsonReader(new StringReader("\"abc")).nextString();
+    }
+
+    @Test
+    public void testTokensSplitAcrossReads() throws IOException {
+        String json = "{\"name\" : \"v\\u00e4lue\", \"number\": -12.5e1, \"flag\":true, \"nothing\" : null, "
+                + "\"list\":[1, {\"nested\": [\"x\"]}, false]}";
+        assertDocument(new JsonReader(new OneCharReader(json)));
+    }
+
+    @Test
+    public void testTokensSplitAcrossBuffer() throws IOException {
+        // place the escapes and literals of the document at the end of the 8192 characters buffer
+        for (int padding = 8150; padding < 8200; padding++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < padding; i++) {
+                sb.append(' ');
+            }
+            sb.append("{\"name\" : \"v\\u00e4lue\", \"number\": -12.5e1, \"flag\":true, \"nothing\" : null, "
+                    + "\"list\":[1, {\"nested\": [\"x\"]}, false]}");
+            assertDocument(new JsonReader(new StringReader(sb.toString())));
+        }
+    }
+
+    @Test
+    public void testLongString() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        JsonReader reader = new JsonReader(new StringReader("[\"" + sb + "\"]"));
+        reader.beginArray();
+        assertEquals(sb.toString(), reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    public void testSkipValue() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(
+                "{\"skip\":{\"a\":[1,2,{\"b\":\"}]\\\"\"}],\"c\":null},\"keep\":\"value\"}"));
+        reader.beginObject();
+        assertEquals("skip", reader.nextName());
+        reader.skipValue();
+        assertEquals("keep", reader.nextName());
+        assertEquals("value", reader.nextString());
+        reader.endObject();
+    }
+
+    @Test
+    public void testNullValues() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[null, \"x\"]"));
+        reader.beginArray();
+        assertEquals(JsonReader.Token.NULL, reader.peek());
+        assertNull(reader.nextStringOrNull());
+        assertEquals("x", reader.nextStringOrNull());
+        reader.endArray();
+    }
+
+    @Test
+    public void testNumbers() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[0, -1, 1234567890123, 1.9, 2E3]"));
+        reader.beginArray();
+        assertEquals(0, reader.nextLong());
+        assertEquals(-1, reader.nextLong());
+        assertEquals(1234567890123L, reader.nextLong());
+        assertEquals(1, reader.nextLong());
+        assertEquals(2000, reader.nextLong());
+        assertFalse(reader.hasNext());
+        reader.endArray();
+    }
+
+    @Test
+    public void testSyntaxErrorPosition() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("{\"a\" 1}"));
+        reader.beginObject();
+        try {
+            reader.nextName();
+            reader.nextLong();
+            fail("Syntax error expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("position"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnexpectedToken() throws IOException {
+        new JsonReader(new StringReader("[1]")).beginObject();
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedDocument() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("{\"a\":[1,"));
+        reader.beginObject();
+        reader.nextName();
+        reader.skipValue();
+    }
+
+    private void assertDocument(JsonReader reader) throws IOException {
+        reader.beginObject();
+        assertEquals("name", reader.nextName());
+        assertEquals("v\u00e4lue", reader.nextString());
+        assertEquals("number", reader.nextName());
+        assertEquals(JsonReader.Token.NUMBER, reader.peek());
+        assertEquals(-125, reader.nextLong());
+        assertEquals("flag", reader.nextName());
+        assertTrue(reader.nextBoolean());
+        assertEquals("nothing", reader.nextName());
+        reader.nextNull();
+        assertEquals("list", reader.nextName());
+        reader.beginArray();
+        assertEquals(1, reader.nextLong());
+        reader.beginObject();
+        assertEquals("nested", reader.nextName());
+        reader.beginArray();
+        assertEquals("x", reader.nextString());
+        reader.endArray();
+        reader.endObject();
+        assertFalse(reader.nextBoolean());
+        reader.endArray();
+        reader.endObject();
+        assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    /**
+     * Returns one character per read, so that every token is split across reads
+     */
+    private static class OneCharReader extends Reader {
+
+        private final String s;
+        private int pos = 0;
+
+        private OneCharReader(String s) {
+            this.s = s;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos >= s.length()) {
+                return -1;
+            }
+            cbuf[off] = s.charAt(pos++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.berlios.vch.parser.br;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RenditionProfileTest {
+
+    private static final String MP4 = "video/mp4";
+
+    private static final String WEBM = "video/webm";
+
+    private final Rendition hd = rendition(1280, 720, MP4);
+
+    private final Rendition sd = rendition(640, 360, MP4);
+
+    private final Rendition low = rendition(320, 180, MP4);
+
+    private final Rendition webm = rendition(854, 480, WEBM);
+
+    private final Rendition unknown = rendition(0, 0, MP4);
+
+    @Test
+    public void testParse() {
+        RenditionProfile profile = RenditionProfile
+                .parse(" mobile : maxHeight=360, maxWidth=640,maxBitrate=1200,mimetype=video/mp4");
+        assertEquals("mobile", profile.getName());
+        assertEquals(360, profile.getMaxHeight());
+        assertEquals(640, profile.getMaxWidth());
+        assertEquals(1200, profile.getMaxBitrate());
+        assertEquals(MP4, profile.getMimetype());
+
+        profile = RenditionProfile.parse("best");
+        assertEquals("best", profile.getName());
+        assertEquals(0, profile.getMaxHeight());
+        assertNull(profile.getMimetype());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        for (String config : Arrays.asList("", ":maxHeight=360", "hd:maxHeight", "hd:maxHeight=high", "hd:fps=25")) {
+            try {
+                RenditionProfile.parse(config);
+                fail("invalid profile \"" + config + "\" parsed");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testSelectBest() {
+        assertSame(hd, RenditionProfile.BEST.select(Arrays.asList(sd, hd, webm, low)));
+        assertNull(RenditionProfile.BEST.select(Collections.<Rendition> emptyList()));
+    }
+
+    @Test
+    public void testSelectWithConstraints() {
+        List<Rendition> renditions = Arrays.asList(hd, sd, webm, low);
+        assertSame(webm, RenditionProfile.parse("sd:maxHeight=576").select(renditions));
+        assertSame(sd, RenditionProfile.parse("narrow:maxWidth=700").select(renditions));
+        assertSame(sd, RenditionProfile.parse("mobile:maxBitrate=1200").select(renditions));
+    }
+
+    @Test
+    public void testNoneFitsSelectsSmallest() {
+        assertSame(low, RenditionProfile.parse("tiny:maxHeight=144").select(Arrays.asList(hd, low, sd)));
+    }
+
+    @Test
+    public void testUnknownSize() {
+        RenditionProfile tiny = RenditionProfile.parse("tiny:maxBitrate=100");
+        // an unknown size is ranked last, when nothing fits
+        assertSame(sd, tiny.select(Arrays.asList(unknown, hd, sd)));
+        assertSame(sd, tiny.select(Arrays.asList(hd, sd, unknown)));
+        // a known size is preferred, when it fits
+        assertSame(hd, RenditionProfile.BEST.select(Arrays.asList(unknown, hd)));
+        assertSame(unknown, RenditionProfile.BEST.select(Arrays.asList(unknown)));
+        assertSame(unknown, tiny.select(Arrays.asList(unknown)));
+    }
+
+    @Test
+    public void testMimetype() {
+        List<Rendition> renditions = Arrays.asList(hd, sd, webm, low);
+        assertSame(webm, RenditionProfile.parse("webm:mimetype=video/webm").select(renditions));
+        assertSame(sd, RenditionProfile.parse("mp4:maxHeight=576,mimetype=video/mp4").select(renditions));
+        // no webm fits, the smallest webm is better than another type
+        assertSame(webm, RenditionProfile.parse("webm:maxHeight=360,mimetype=video/webm").select(renditions));
+    }
+
+    @Test
+    public void testMimetypeFallback() {
+        List<Rendition> renditions = Arrays.asList(hd, sd, low);
+        assertSame(hd, RenditionProfile.parse("webm:mimetype=video/webm").select(renditions));
+        assertSame(sd, RenditionProfile.parse("webm:maxHeight=480,mimetype=video/webm").select(renditions));
+        assertSame(low, RenditionProfile.parse("webm:maxHeight=144,mimetype=video/webm").select(renditions));
+    }
+
+    private static Rendition rendition(int width, int height, String mimetype) {
+        return new Rendition(URI.create("http://example.com/" + width + "x" + height + "." + mimetype.substring(6)),
+                width, height, mimetype);
+    }
+}
@@ -0,0 +1,124 @@
+package de.berlios.vch.parser.br;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+    private final ResponseCache<String> cache = new ResponseCache<String>(10);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testGetWaitsForBatch() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Future<?> batch = loadInBackground(loading, done, Collections.singletonMap("k", "batch"));
+        loading.await();
+
+        Future<String> get = getInBackground("k");
+        done.countDown();
+        batch.get(5, TimeUnit.SECONDS);
+        assertEquals("batch", get.get(5, TimeUnit.SECONDS));
+        assertEquals(1, cache.getCoalesced());
+    }
+
+    @Test
+    public void testGetLoadsKeyMissingInBatch() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Future<?> batch = loadInBackground(loading, done, Collections.<String, String> emptyMap());
+        loading.await();
+
+        Future<String> get = getInBackground("k");
+        done.countDown();
+        batch.get(5, TimeUnit.SECONDS);
+        assertEquals("single", get.get(5, TimeUnit.SECONDS));
+        assertEquals(0, cache.getCoalesced());
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        try {
+            cache.load(Arrays.asList("k"), new ResponseCache.BatchLoader<String>() {
+                @Override
+                public Map<String, String> load(List<String> keys) throws IOException {
+                    throw new IOException("failed");
+                }
+            }, 1000);
+            fail("batch didn't fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals("single", cache.get("k", loader("single"), 1000));
+    }
+
+    @Test
+    public void testPeekDoesNotCount() {
+        cache.put("k", "v", 1000);
+        assertEquals("v", cache.peek("k"));
+        assertNull(cache.peek("x"));
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    private Future<?> loadInBackground(final CountDownLatch loading, final CountDownLatch done,
+            final Map<String, String> result) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                cache.load(Arrays.asList("k"), new ResponseCache.BatchLoader<String>() {
+                    @Override
+                    public Map<String, String> load(List<String> keys) throws Exception {
+                        loading.countDown();
+                        done.await();
+                        return result;
+                    }
+                }, 1000);
+                return null;
+            }
+        });
+    }
+
+    private Future<String> getInBackground(final String key) throws InterruptedException {
+        Future<String> future = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cache.get(key, loader("single"), 1000);
+            }
+        });
+        // give the caller time to find the claimed key
+        Thread.sleep(100);
+        return future;
+    }
+
+    private Callable<String> loader(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return value;
+            }
+        };
+    }
+}